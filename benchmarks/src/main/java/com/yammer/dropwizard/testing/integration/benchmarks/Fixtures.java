@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import com.yammer.dropwizard.testing.integration.ExampleConfiguration;
+import com.yammer.dropwizard.testing.integration.ExampleService;
+import com.yammer.dropwizard.testing.integration.TestServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The example service and its fixtures from the integration tests, which live in the test jar.
+ */
+final class Fixtures {
+    static final String VALUE_FILE = "value.txt";
+    static final String IN_PROCESS_URL = "http://in-process/";
+    /** keeps the benchmarks off the ports of the config file, so they can run next to a test suite */
+    static final Map<String, String> EPHEMERAL_PORTS = ImmutableMap.of("http.port", "0", "http.adminPort", "0");
+    private static final Pattern PORT_SETTING = Pattern.compile("(?m)^([ \\t]+(?:port|adminPort)):[ \\t]*\\d+[ \\t]*$");
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return the path of a copy of the integration tests' config file; TestServer needs a file, not a resource
+     */
+    static String extractConfig() throws IOException {
+        final File config = File.createTempFile("benchmark", ".yml");
+        config.deleteOnExit();
+        copyResource("testConfiguration.yml", config);
+        return config.getPath();
+    }
+
+    /**
+     * @return the path of a copy of the integration tests' config file with {@link #EPHEMERAL_PORTS} applied, for
+     * the command line, which takes no overrides
+     */
+    static String extractEphemeralPortsConfig() throws IOException {
+        final File config = new File(extractConfig());
+        final String original = new String(Files.readAllBytes(config.toPath()), StandardCharsets.UTF_8);
+        final String overridden = PORT_SETTING.matcher(original).replaceAll("$1: 0");
+        checkState(!overridden.equals(original), "No ports found in %s", config);
+        Files.write(config.toPath(), overridden.getBytes(StandardCharsets.UTF_8));
+        return config.getPath();
+    }
+
+    /**
+     * Stages the value file in the working directory, as TestServer would, for the benchmarks which drive
+     * the LifecycleService directly.
+     */
+    static void stageValueFile() throws IOException {
+        copyResource(VALUE_FILE, new File(VALUE_FILE));
+    }
+
+    static void removeValueFile() {
+        new File(VALUE_FILE).delete();
+    }
+
+    static TestServer<ExampleConfiguration, ExampleService> createServer(String configFile) throws Exception {
+        return TestServer.create(ExampleService.class, new ExampleService(), configFile, EPHEMERAL_PORTS, VALUE_FILE);
+    }
+
+    private static void copyResource(String name, File target) throws IOException {
+        try (InputStream resource = ExampleService.class.getResourceAsStream(name)) {
+            Files.copy(resource, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
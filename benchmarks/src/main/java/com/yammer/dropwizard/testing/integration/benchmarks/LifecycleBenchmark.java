@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration.benchmarks;
+
+import com.yammer.dropwizard.testing.integration.ExampleConfiguration;
+import com.yammer.dropwizard.testing.integration.ExampleService;
+import com.yammer.dropwizard.testing.integration.LifecycleService;
+import com.yammer.dropwizard.testing.integration.TestServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.yammer.dropwizard.testing.integration.LifecycleServerCommand.COMMAND_LINE_NAME;
+
+/**
+ * The cost of starting and stopping the example service. Every invocation is a full start (or stop), so the
+ * benchmarks run in single shot mode; the stop includes Jetty's graceful shutdown period.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LifecycleBenchmark {
+    private String configFile;
+    private String ephemeralPortsConfigFile;
+    private TestServer<ExampleConfiguration, ExampleService> server;
+    private LifecycleService<ExampleConfiguration, ExampleService> lifecycle;
+
+    @Setup(Level.Trial)
+    public void extractConfig() throws Exception {
+        configFile = Fixtures.extractConfig();
+        ephemeralPortsConfigFile = Fixtures.extractEphemeralPortsConfig();
+        Fixtures.stageValueFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void removeFiles() {
+        Fixtures.removeValueFile();
+    }
+
+    @Setup(Level.Invocation)
+    public void createServers() throws Exception {
+        server = Fixtures.createServer(configFile);
+        lifecycle = new LifecycleService<>(new ExampleService());
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopServers() throws Exception {
+        if (server.isRunning()) {
+            server.stop();
+        }
+        if (lifecycle.isRunning()) {
+            lifecycle.stop();
+        }
+    }
+
+    /**
+     * A cold start of a new TestServer, with config overrides: staging files, parsing the config, running the
+     * service and starting Jetty.
+     */
+    @Benchmark
+    public TestServer<?, ?> testServerStart() throws Exception {
+        server.start();
+        return server;
+    }
+
+    @Benchmark
+    public TestServer<?, ?> testServerStartStop() throws Exception {
+        server.start();
+        server.stop();
+        return server;
+    }
+
+    /**
+     * The command line path, as taken by a TestServer created without overrides; the ports are overridden in the
+     * config file instead.
+     */
+    @Benchmark
+    public LifecycleService<?, ?> lifecycleServiceRunCommandLine() throws Exception {
+        lifecycle.run(new String[]{COMMAND_LINE_NAME, ephemeralPortsConfigFile});
+        return lifecycle;
+    }
+
+    @Benchmark
+    public LifecycleService<?, ?> lifecycleServiceRunWithOverrides() throws Exception {
+        lifecycle.run(configFile, Fixtures.EPHEMERAL_PORTS);
+        return lifecycle;
+    }
+
+    /**
+     * Restarts of one server, which reuse its parsed configuration, thread pool and ports.
+     */
+    @State(Scope.Benchmark)
+    public static class Restarts {
+        private TestServer<ExampleConfiguration, ExampleService> server;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            server = Fixtures.createServer(Fixtures.extractConfig()).withEphemeralPorts();
+            server.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws Exception {
+            if (server.isRunning()) {
+                server.stop();
+            }
+        }
+    }
+
+    @Benchmark
+    public TestServer<?, ?> testServerRestart(Restarts restarts) throws Exception {
+        restarts.server.restart();
+        return restarts.server;
+    }
+}
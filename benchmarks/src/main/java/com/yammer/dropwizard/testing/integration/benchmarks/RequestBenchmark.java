@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration.benchmarks;
+
+import com.sun.jersey.api.client.Client;
+import com.yammer.dropwizard.testing.integration.ExampleClient;
+import com.yammer.dropwizard.testing.integration.ExampleConfiguration;
+import com.yammer.dropwizard.testing.integration.ExampleService;
+import com.yammer.dropwizard.testing.integration.TestServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of a GET to the example service, through a socket and through the in-process transport.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBenchmark {
+    private TestServer<ExampleConfiguration, ExampleService> server;
+    private ExampleClient socketClient;
+    private ExampleClient inProcessClient;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        server = Fixtures.createServer(Fixtures.extractConfig())
+                .withEphemeralPorts()
+                .withInProcessTransport();
+        server.start();
+        socketClient = new ExampleClient(new Client(), server.getBaseUri().toString());
+        inProcessClient = new ExampleClient(server.createInProcessClient(), Fixtures.IN_PROCESS_URL);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    @Benchmark
+    public String socket() {
+        return socketClient.getValue();
+    }
+
+    @Benchmark
+    public String inProcess() {
+        return inProcessClient.getValue();
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TreeTraversingParser;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.yammer.dropwizard.config.ConfigurationException;
+import com.yammer.dropwizard.json.ObjectMapperFactory;
+import com.yammer.dropwizard.validation.Validator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds configuration objects from a base YAML file and a map of overrides, e.g., {@code http.port=0}. The
+ * overrides use the same dotted paths as dropwizard's {@code dw.} system properties, which are applied as well.
+ * The parsed YAML trees are cached, so a file is only parsed again when its content changes. The content is
+ * compared, rather than the modification time, whose granularity (a second on many file systems) misses the
+ * changes a test makes right after the file was written.
+ */
+/* package */ final class ConfigurationOverrides {
+    private static final String PROPERTY_PREFIX = "dw.";
+    private static final ConcurrentMap<File, CachedTree> parsedFiles = Maps.newConcurrentMap();
+
+    private ConfigurationOverrides() {
+    }
+
+    /* package */ static <T> T build(Class<T> configurationClass, ObjectMapperFactory objectMapperFactory,
+                                     String configFile, Map<String, String> overrides)
+            throws IOException, ConfigurationException {
+        final ObjectMapperFactory factory = objectMapperFactory.copy();
+        factory.enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        final ObjectMapper mapper = factory.build(new YAMLFactory());
+
+        final JsonNode node = readTree(mapper, new File(configFile)).deepCopy();
+        for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+            final String propertyName = (String) property.getKey();
+            if (propertyName.startsWith(PROPERTY_PREFIX)) {
+                addOverride(node, propertyName.substring(PROPERTY_PREFIX.length()), (String) property.getValue());
+            }
+        }
+        for (Map.Entry<String, String> override : overrides.entrySet()) {
+            addOverride(node, override.getKey(), override.getValue());
+        }
+
+        final T configuration = mapper.readValue(new TreeTraversingParser(node), configurationClass);
+        validate(configFile, configuration);
+        return configuration;
+    }
+
+    /* package */ static void validate(String source, Object configuration) throws ConfigurationException {
+        final ImmutableList<String> errors = new Validator().validate(configuration);
+        if (!errors.isEmpty()) {
+            throw new ConfigurationException(source, errors);
+        }
+    }
+
+    private static JsonNode readTree(ObjectMapper mapper, File file) throws IOException {
+        final byte[] content = Files.toByteArray(file);
+        final HashCode hash = Hashing.sha1().hashBytes(content);
+        final CachedTree cached = parsedFiles.get(file);
+        if (cached != null && cached.length == content.length && cached.hash.equals(hash)) {
+            return cached.tree;
+        }
+        final JsonNode tree = mapper.readTree(content);
+        parsedFiles.put(file, new CachedTree(content.length, hash, tree));
+        return tree;
+    }
+
+    // mirrors ConfigurationFactory#addOverride, which is private
+    private static void addOverride(JsonNode root, String name, String value) {
+        JsonNode node = root;
+        final Iterator<String> keys = Splitter.on('.').trimResults().split(name).iterator();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            if (!(node instanceof ObjectNode)) {
+                throw new IllegalArgumentException("Unable to override " + name + "; it's not a valid path.");
+            }
+
+            final ObjectNode obj = (ObjectNode) node;
+            if (keys.hasNext()) {
+                JsonNode child = obj.get(key);
+                if (child == null) {
+                    child = obj.objectNode();
+                    obj.put(key, child);
+                }
+                node = child;
+            } else {
+                obj.put(key, value);
+            }
+        }
+    }
+
+    private static final class CachedTree {
+        private final int length;
+        private final HashCode hash;
+        private final JsonNode tree;
+
+        private CachedTree(int length, HashCode hash, JsonNode tree) {
+            this.length = length;
+            this.hash = hash;
+            this.tree = tree;
+        }
+    }
+}
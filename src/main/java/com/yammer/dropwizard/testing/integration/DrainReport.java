@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the requests in flight when a server was told to stop fared, see
+ * {@link LifecycleServerCommand#setDrainTimeout(long, TimeUnit)}: those which completed before the deadline and
+ * those which were cut off when the server stopped regardless. Long polls and other suspended requests count
+ * as in flight until they complete.
+ */
+public class DrainReport {
+    private final int inFlight;
+    private final int completed;
+    private final int rejected;
+    private final int cutOff;
+    private final long drainNanos;
+
+    /* package */ DrainReport(int inFlight, int completed, int rejected, int cutOff, long drainNanos) {
+        this.inFlight = inFlight;
+        this.completed = completed;
+        this.rejected = rejected;
+        this.cutOff = cutOff;
+        this.drainNanos = drainNanos;
+    }
+
+    /* package */ static DrainReport empty() {
+        return new DrainReport(0, 0, 0, 0, 0);
+    }
+
+    /**
+     * @return the number of requests in flight when the server stopped accepting connections
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of the requests in flight which completed before the deadline
+     */
+    public int getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return the number of requests sent during the drain over connections kept alive, which were answered with
+     * a 503 rather than served
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the number of the requests in flight which had not completed by the deadline
+     */
+    public int getCutOff() {
+        return cutOff;
+    }
+
+    /**
+     * @return the time from closing the connectors until the last request completed or the deadline passed
+     */
+    public long getDrain(TimeUnit unit) {
+        return unit.convert(drainNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d in flight, %d completed, %d cut off, %d rejected in %.3f ms", inFlight, completed,
+                cutOff, rejected, drainNanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.yammer.dropwizard.Service;
+import com.yammer.dropwizard.config.Configuration;
+import com.yammer.dropwizard.config.Environment;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs a service with a {@link FaultInjector} in front of its resources, to test how its clients cope with
+ * latency, throttling, resets and errors, or how it queues under backpressure:
+ * <pre>
+ * FaultInjectingService&lt;MyConfiguration&gt; service = FaultInjectingService.create(new MyService());
+ * TestServer.create(MyTest.class, service, CONFIG).start();
+ * service.getFaults().forPath("/").withLatency(LatencyDistribution.fixed(1, SECONDS));
+ * </pre>
+ * The injector is kept across restarts. The admin connector is not affected, so health checks still pass.
+ */
+public class FaultInjectingService<C extends Configuration> extends ServiceWrapper<C> {
+    private final Service<C> delegate;
+    private final FaultInjector faults = new FaultInjector();
+
+    private FaultInjectingService(Service<C> delegate) {
+        this.delegate = checkNotNull(delegate);
+    }
+
+    public static <C extends Configuration> FaultInjectingService<C> create(Service<C> service) {
+        return new FaultInjectingService<>(service);
+    }
+
+    @Override
+    public void run(C configuration, Environment environment) throws Exception {
+        super.run(configuration, environment);
+        environment.addFilter(faults, "/*");
+    }
+
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    @Override
+    protected Service<C> getDelegate() {
+        return delegate;
+    }
+}
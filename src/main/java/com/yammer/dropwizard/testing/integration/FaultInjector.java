@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.Maps;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.AbstractHttpConnection;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A servlet filter which injects faults into the requests to the service, as set up per path prefix by the
+ * test while the server runs, see {@link FaultInjectingService}:
+ * <pre>
+ * faults.forPath("/users").withLatency(LatencyDistribution.exponential(20, MILLISECONDS)).withErrorRate(0.05, 503);
+ * </pre>
+ * A request is subject to the rule with the longest matching prefix. The latency is spent on the thread serving
+ * the request, so slow requests hold on to the server's threads as a slow dependency would.
+ */
+public class FaultInjector implements Filter {
+    private static final int THROTTLE_CHUNKS_PER_SECOND = 20;
+    private final ConcurrentMap<String, FaultRule> rules = Maps.newConcurrentMap();
+
+    /**
+     * @param pathPrefix e.g. {@code /users}, or {@code /} for all the requests
+     * @return the rule for the prefix, created without any faults if there is none
+     */
+    public FaultRule forPath(String pathPrefix) {
+        checkArgument(pathPrefix.startsWith("/"), "The path must start with /");
+        final FaultRule created = new FaultRule(pathPrefix);
+        final FaultRule existing = rules.putIfAbsent(pathPrefix, created);
+        return existing == null ? created : existing;
+    }
+
+    /**
+     * Removes the rule for the prefix, so that its requests are served as usual.
+     */
+    public void remove(String pathPrefix) {
+        rules.remove(pathPrefix);
+    }
+
+    /**
+     * Removes all the rules, e.g. between tests.
+     */
+    public void clear() {
+        rules.clear();
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        final FaultRule rule = request instanceof HttpServletRequest
+                ? findRule(((HttpServletRequest) request).getRequestURI()) : null;
+        if (rule == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        rule.countRequest();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < rule.getResetRate()) {
+            rule.countReset();
+            resetConnection();
+            return;
+        }
+        sleep(rule.getLatency().sampleNanos(random));
+        if (random.nextDouble() < rule.getErrorRate()) {
+            rule.countError();
+            ((HttpServletResponse) response).sendError(rule.getErrorStatus(), "Injected fault");
+            return;
+        }
+        final long bytesPerSecond = rule.getBytesPerSecond();
+        if (bytesPerSecond > 0) {
+            final ThrottledResponse throttled = new ThrottledResponse((HttpServletResponse) response, bytesPerSecond);
+            chain.doFilter(request, throttled);
+            throttled.flushWriter();
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private FaultRule findRule(String path) {
+        FaultRule longest = null;
+        for (Map.Entry<String, FaultRule> rule : rules.entrySet()) {
+            if (path.startsWith(rule.getKey())
+                    && (longest == null || rule.getKey().length() > longest.getPathPrefix().length())) {
+                longest = rule.getValue();
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Closes the connection with a TCP reset rather than a regular close, as a crashed or overloaded peer would.
+     */
+    private static void resetConnection() throws IOException {
+        final EndPoint endPoint = AbstractHttpConnection.getCurrentConnection().getEndPoint();
+        final Object transport = endPoint.getTransport();
+        final Socket socket = transport instanceof SocketChannel ? ((SocketChannel) transport).socket()
+                : transport instanceof Socket ? (Socket) transport : null;
+        if (socket != null) {
+            socket.setSoLinger(true, 0);
+        }
+        endPoint.close();
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while injecting latency");
+        }
+    }
+
+    /**
+     * Writes the response body in chunks, flushed one by one, paced to the bandwidth.
+     */
+    private static final class ThrottledResponse extends HttpServletResponseWrapper {
+        private final long bytesPerSecond;
+        private final int chunkSize;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private ThrottledResponse(HttpServletResponse response, long bytesPerSecond) {
+            super(response);
+            this.bytesPerSecond = bytesPerSecond;
+            this.chunkSize = (int) Math.max(1, Math.min(64 * 1024, bytesPerSecond / THROTTLE_CHUNKS_PER_SECOND));
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                final ServletOutputStream delegate = super.getOutputStream();
+                final long start = System.nanoTime();
+                outputStream = new ServletOutputStream() {
+                    private long written = 0;
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        for (int position = offset; position < offset + length; position += chunkSize) {
+                            final int chunk = Math.min(chunkSize, offset + length - position);
+                            delegate.write(bytes, position, chunk);
+                            delegate.flush();
+                            written += chunk;
+                            sleep(start + written * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond - System.nanoTime());
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flushWriter();
+            super.flushBuffer();
+        }
+
+        private void flushWriter() {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+    }
+}
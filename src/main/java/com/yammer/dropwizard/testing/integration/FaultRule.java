@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The faults a {@link FaultInjector} injects into the requests under a path prefix. A request is, in this
+ * order, reset with the reset rate, delayed by the latency, failed with the error rate, and otherwise served
+ * with its response throttled to the bandwidth. The settings can be changed while the server runs; they apply
+ * from the next request on.
+ */
+public class FaultRule {
+    private final String pathPrefix;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private volatile LatencyDistribution latency = LatencyDistribution.NONE;
+    private volatile long bytesPerSecond = 0;
+    private volatile double errorRate = 0;
+    private volatile int errorStatus = 503;
+    private volatile double resetRate = 0;
+
+    /* package */ FaultRule(String pathPrefix) {
+        this.pathPrefix = pathPrefix;
+    }
+
+    public String getPathPrefix() {
+        return pathPrefix;
+    }
+
+    /**
+     * @return this rule
+     */
+    public FaultRule withLatency(LatencyDistribution latency) {
+        this.latency = checkNotNull(latency);
+        return this;
+    }
+
+    /**
+     * @param bytesPerSecond the rate the response bodies are written at, or 0 for no limit
+     * @return this rule
+     */
+    public FaultRule withBandwidth(long bytesPerSecond) {
+        checkArgument(bytesPerSecond >= 0, "The bandwidth cannot be negative");
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param rate the share of the requests failed, between 0 and 1
+     * @param status the status of the failed requests, e.g. 503
+     * @return this rule
+     */
+    public FaultRule withErrorRate(double rate, int status) {
+        checkArgument(rate >= 0 && rate <= 1, "The rate must be between 0 and 1");
+        checkArgument(status >= 400 && status < 600, "The status must be an error status");
+        this.errorStatus = status;
+        this.errorRate = rate;
+        return this;
+    }
+
+    /**
+     * @param rate the share of the requests whose connection is reset instead of answered, between 0 and 1
+     * @return this rule
+     */
+    public FaultRule withResetRate(double rate) {
+        checkArgument(rate >= 0 && rate <= 1, "The rate must be between 0 and 1");
+        this.resetRate = rate;
+        return this;
+    }
+
+    /**
+     * @return the number of requests matched by this rule
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public long getResetCount() {
+        return resets.get();
+    }
+
+    /* package */ LatencyDistribution getLatency() {
+        return latency;
+    }
+
+    /* package */ long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /* package */ double getErrorRate() {
+        return errorRate;
+    }
+
+    /* package */ int getErrorStatus() {
+        return errorStatus;
+    }
+
+    /* package */ double getResetRate() {
+        return resetRate;
+    }
+
+    /* package */ void countRequest() {
+        requests.incrementAndGet();
+    }
+
+    /* package */ void countError() {
+        errors.incrementAndGet();
+    }
+
+    /* package */ void countReset() {
+        resets.incrementAndGet();
+    }
+}
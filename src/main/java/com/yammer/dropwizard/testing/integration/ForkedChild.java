@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A child JVM running {@link ForkedServerMain}, in a working directory of its own, and the control connection
+ * to it.
+ */
+/* package */ final class ForkedChild implements Closeable {
+    private static final int EXIT_TIMEOUT_MILLIS = 5000;
+    /** how often a child which has not connected back yet is checked for having exited */
+    private static final int ACCEPT_POLL_MILLIS = 100;
+    /** the end of the error output of a child which failed to start that is reported */
+    private static final int REPORTED_ERROR_BYTES = 8 * 1024;
+    private final Process process;
+    private final Path directory;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private ForkedChild(Process process, Path directory, Socket socket) throws IOException {
+        this.process = process;
+        this.directory = directory;
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Launches a child and waits for it to connect back, i.e., to be ready for commands. A child which exits
+     * first, e.g. on a bad JVM argument, fails the fork at once with its exit code and the end of its error output,
+     * which otherwise goes to the error output of this JVM.
+     */
+    /* package */ static ForkedChild fork(List<String> jvmArguments, long timeoutMillis) throws IOException {
+        final Path directory = Files.createTempDirectory("forked-test-server-");
+        try (ServerSocket control = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            control.setSoTimeout(ACCEPT_POLL_MILLIS);
+            final List<String> command = Lists.newArrayList(
+                    System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.addAll(jvmArguments);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ForkedServerMain.class.getName());
+            command.add(Integer.toString(control.getLocalPort()));
+            final Process process = new ProcessBuilder(command)
+                    .directory(directory.toFile())
+                    .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            final ErrorTail errors = new ErrorTail(process.getErrorStream());
+            errors.start();
+            try {
+                final Socket socket = accept(control, process, errors, timeoutMillis);
+                socket.setTcpNoDelay(true);
+                return new ForkedChild(process, directory, socket);
+            } catch (IOException e) {
+                process.destroy();
+                Sandbox.deleteRecursively(directory);
+                throw e;
+            }
+        }
+    }
+
+    private static Socket accept(ServerSocket control, Process process, ErrorTail errors, long timeoutMillis)
+            throws IOException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            try {
+                return control.accept();
+            } catch (SocketTimeoutException e) {
+                final Integer exitCode = exitCode(process);
+                if (exitCode != null) {
+                    errors.awaitEnd();
+                    throw new IOException("The child JVM exited with code " + exitCode + " before connecting back: "
+                            + errors.getText());
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("The child JVM did not connect back within " + timeoutMillis + " ms", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the exit code of the process, null while it runs
+     */
+    private static Integer exitCode(Process process) {
+        try {
+            return process.exitValue();
+        } catch (IllegalThreadStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the working directory of the child, into which its supporting files go
+     */
+    /* package */ Path getDirectory() {
+        return directory;
+    }
+
+    /* package */ boolean isAlive() {
+        return exitCode(process) == null;
+    }
+
+    /**
+     * Sends a command and waits for its results.
+     * @throws IllegalStateException if the command failed in the child, with the child's stack trace
+     */
+    /* package */ synchronized List<String> call(String command, String... arguments) throws IOException {
+        ForkedServerMain.write(out, command, arguments);
+        final List<String> response = ForkedServerMain.read(in);
+        if (ForkedServerMain.ERROR.equals(response.get(0))) {
+            throw new IllegalStateException("'" + command + "' failed in the child JVM: " + response.get(1));
+        }
+        return response.subList(1, response.size());
+    }
+
+    /**
+     * Asks the child to exit, kills it if it does not, and deletes its working directory.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (isAlive()) {
+                try {
+                    call(ForkedServerMain.EXIT);
+                } catch (IOException ignored) {
+                    // killed below
+                }
+            }
+            socket.close();
+            if (!waitFor(EXIT_TIMEOUT_MILLIS)) {
+                process.destroy();
+            }
+        } finally {
+            deleteDirectory();
+        }
+    }
+
+    private boolean waitFor(long timeoutMillis) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (isAlive()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void deleteDirectory() throws IOException {
+        if (Files.exists(directory)) {
+            Sandbox.deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Copies the error output of a child to the one of this JVM, keeping its end to report a failed start.
+     */
+    private static final class ErrorTail extends Thread {
+        private final InputStream errors;
+        private final byte[] tail = new byte[REPORTED_ERROR_BYTES];
+        private long written = 0;
+
+        private ErrorTail(InputStream errors) {
+            super("forked-child-errors");
+            setDaemon(true);
+            this.errors = errors;
+        }
+
+        @Override
+        public void run() {
+            final byte[] buffer = new byte[4096];
+            try {
+                int read;
+                while ((read = errors.read(buffer)) >= 0) {
+                    System.err.write(buffer, 0, read);
+                    keep(buffer, read);
+                }
+            } catch (IOException ignored) {
+                // the child has gone away
+            }
+        }
+
+        private synchronized void keep(byte[] bytes, int length) {
+            for (int i = 0; i < length; i++) {
+                tail[(int) (written++ % tail.length)] = bytes[i];
+            }
+        }
+
+        private void awaitEnd() {
+            try {
+                join(EXIT_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private synchronized String getText() {
+            final int length = (int) Math.min(written, tail.length);
+            final byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = tail[(int) ((written - length + i) % tail.length)];
+            }
+            return new String(bytes, Charsets.UTF_8).trim();
+        }
+    }
+}
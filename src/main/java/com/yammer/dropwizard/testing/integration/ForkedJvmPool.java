@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Keeps child JVMs for {@link ForkedTestServer}s ready, so that a test does not wait for a JVM to boot and load
+ * the server classes. A child runs a single service and exits when it is stopped, for isolation; the pool forks
+ * a replacement in the background every time it hands one out. The children are killed when the JVM exits.
+ *
+ * A child handed out has booted and has loaded and initialized the classes dropwizard, Jetty, Jersey, Jackson
+ * and Hibernate Validator start a service with, see {@link ForkedServerMain}. That is all: no service code has
+ * run and nothing has been compiled, so the first start still runs in the interpreter. The children get no JVM
+ * arguments by default; some can be given to the constructor, e.g. an application class data sharing archive on
+ * JVMs which support one, or {@code -XX:TieredStopAtLevel=1} for the client compiler only, which starts faster but
+ * slows down services which do real work.
+ */
+public class ForkedJvmPool {
+    private static final Logger logger = LoggerFactory.getLogger(ForkedJvmPool.class);
+    public static final List<String> DEFAULT_JVM_ARGUMENTS = ImmutableList.of();
+    private static final long FORK_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final ForkedJvmPool DEFAULT_POOL =
+            new ForkedJvmPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), DEFAULT_JVM_ARGUMENTS);
+
+    private final int size;
+    private final List<String> jvmArguments;
+    private final Deque<ForkedChild> idle = Lists.newLinkedList();
+    private final ExecutorService forker;
+    private int forking = 0;
+    private boolean shutdownHookRegistered = false;
+
+    /**
+     * @param size the number of idle children kept ready
+     * @param jvmArguments the arguments of the child JVMs, e.g. {@link #DEFAULT_JVM_ARGUMENTS} and heap settings
+     */
+    public ForkedJvmPool(int size, List<String> jvmArguments) {
+        checkArgument(size >= 0, "The size cannot be negative");
+        this.size = size;
+        this.jvmArguments = ImmutableList.copyOf(jvmArguments);
+        // the children boot in parallel, or prestart() would take as long as booting them one after the other
+        this.forker = Executors.newFixedThreadPool(Math.max(1, size),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("forked-jvm-pool-%d").build());
+    }
+
+    /**
+     * @return the JVM wide pool, which keeps a child ready for every other core
+     */
+    public static ForkedJvmPool getDefault() {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Forks the idle children up front, e.g. in a {@code @BeforeClass}, rather than on the first acquire.
+     */
+    public synchronized void prestart() {
+        registerShutdownHook();
+        while (idle.size() + forking < size) {
+            forking++;
+            forker.submit(new Runnable() {
+                @Override
+                public void run() {
+                    forkIdle();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return an idle child, or a newly forked one if there is none
+     */
+    /* package */ ForkedChild acquire() throws IOException {
+        ForkedChild child;
+        synchronized (this) {
+            prestart();
+            child = idle.pollFirst();
+            while (child != null && !child.isAlive()) {
+                child = idle.pollFirst();
+            }
+        }
+        if (child == null) {
+            child = ForkedChild.fork(jvmArguments, FORK_TIMEOUT_MILLIS);
+        }
+        prestart(); // replaces the child just taken
+        return child;
+    }
+
+    /**
+     * Kills the idle children.
+     */
+    public void shutdown() {
+        final List<ForkedChild> children;
+        synchronized (this) {
+            children = Lists.newArrayList(idle);
+            idle.clear();
+        }
+        for (ForkedChild child : children) {
+            try {
+                child.close();
+            } catch (IOException e) {
+                logger.warn("Unable to stop a child JVM", e);
+            }
+        }
+    }
+
+    private void forkIdle() {
+        try {
+            final ForkedChild child = ForkedChild.fork(jvmArguments, FORK_TIMEOUT_MILLIS);
+            synchronized (this) {
+                idle.addLast(child);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to fork a child JVM", e);
+        } finally {
+            synchronized (this) {
+                forking--;
+            }
+        }
+    }
+
+    private synchronized void registerShutdownHook() {
+        if (!shutdownHookRegistered) {
+            Runtime.getRuntime().addShutdownHook(new Thread("forked-jvm-pool-shutdown") {
+                @Override
+                public void run() {
+                    shutdown();
+                }
+            });
+            shutdownHookRegistered = true;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import ch.qos.logback.classic.LoggerContext;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.yammer.dropwizard.Service;
+import com.yammer.dropwizard.config.Configuration;
+import com.yammer.metrics.Metrics;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+
+import static com.yammer.dropwizard.testing.integration.LifecycleServerCommand.COMMAND_LINE_NAME;
+
+/**
+ * The entry point of the child JVMs of {@link ForkedTestServer}s. Connects back to the control port given as
+ * the only argument once it has loaded and initialized the server classes listed in {@code PRELOADED_CLASSES},
+ * then runs one service at a time as told by the parent, until the parent says so or goes away.
+ *
+ * The control protocol is a request/response exchange of strings, each written as its length and its UTF-8 bytes
+ * (rather than {@link DataOutputStream#writeUTF(String)}, which is limited to 64K, less than a deep stack trace): a
+ * command and its arguments, answered by {@link #OK} or {@link #ERROR} and the results.
+ */
+public final class ForkedServerMain {
+    /* package */ static final String START = "start";
+    /* package */ static final String STOP = "stop";
+    /* package */ static final String RESTART = "restart";
+    /* package */ static final String RESET = "reset";
+    /* package */ static final String IS_RUNNING = "isRunning";
+    /** stops the server threads of the libraries, before the class loader of an isolated server is closed */
+    /* package */ static final String UNLOAD = "unload";
+    /* package */ static final String EXIT = "exit";
+    /* package */ static final String OK = "ok";
+    /* package */ static final String ERROR = "error";
+    // loaded before the child reports ready, so that the first start does not pay for them
+    private static final List<String> PRELOADED_CLASSES = ImmutableList.of(
+            "com.yammer.dropwizard.config.ServerFactory",
+            "com.yammer.dropwizard.config.ConfigurationFactory",
+            "com.yammer.dropwizard.jersey.DropwizardResourceConfig",
+            "com.sun.jersey.spi.container.servlet.ServletContainer",
+            "org.eclipse.jetty.server.Server",
+            "org.eclipse.jetty.server.nio.SelectChannelConnector",
+            "com.fasterxml.jackson.databind.ObjectMapper",
+            "com.fasterxml.jackson.dataformat.yaml.YAMLFactory",
+            "org.hibernate.validator.HibernateValidator");
+
+    private LifecycleService<?, ?> lifecycle;
+
+    /* package */ ForkedServerMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        preload();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            socket.setTcpNoDelay(true);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            new ForkedServerMain().serve(in, out);
+        }
+        System.exit(0); // the service may have left non-daemon threads behind
+    }
+
+    private static void preload() {
+        for (String className : PRELOADED_CLASSES) {
+            try {
+                Class.forName(className);
+            } catch (ClassNotFoundException | LinkageError ignored) {
+                // not used by this version
+            }
+        }
+    }
+
+    private void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            final List<String> request;
+            try {
+                request = read(in);
+            } catch (EOFException e) {
+                stopQuietly(); // the parent has gone away
+                return;
+            }
+            final String command = request.get(0);
+            if (EXIT.equals(command)) {
+                stopQuietly();
+                write(out, OK);
+                return;
+            }
+            try {
+                write(out, OK, handle(command, request.subList(1, request.size())));
+            } catch (Exception e) {
+                write(out, ERROR, Throwables.getStackTraceAsString(e));
+            }
+        }
+    }
+
+    /**
+     * Runs a command other than {@link #EXIT}, also called reflectively by {@link IsolatedTestServer}, from
+     * outside the class loader of the service.
+     * @return the results
+     */
+    /* package */ String[] handle(String command, List<String> arguments) throws Exception {
+        switch (command) {
+            case START:
+                return start(arguments);
+            case STOP:
+                lifecycle.stop();
+                return new String[0];
+            case RESTART:
+                lifecycle.restart();
+                return uris();
+            case RESET:
+                return new String[]{Long.toString(lifecycle.getServerCommand().reset())};
+            case IS_RUNNING:
+                return new String[]{Boolean.toString(lifecycle != null && lifecycle.isRunning())};
+            case UNLOAD:
+                stopQuietly();
+                Metrics.defaultRegistry().shutdown();
+                ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+                return new String[0];
+            default:
+                throw new IllegalArgumentException("Unknown command " + command);
+        }
+    }
+
+    /**
+     * @param arguments the service class, the config file, whether to use ephemeral ports, then the config
+     *                  overrides as keys and values
+     */
+    @SuppressWarnings("unchecked")
+    private String[] start(List<String> arguments) throws Exception {
+        if (lifecycle == null) {
+            final Service<Configuration> service = (Service<Configuration>) Class.forName(arguments.get(0)).newInstance();
+            lifecycle = new LifecycleService<>(service);
+            lifecycle.getServerCommand().setUseEphemeralPorts(Boolean.parseBoolean(arguments.get(2)));
+        }
+        final Map<String, String> overrides = Maps.newLinkedHashMap();
+        for (int i = 3; i + 1 < arguments.size(); i += 2) {
+            overrides.put(arguments.get(i), arguments.get(i + 1));
+        }
+        if (lifecycle.canRerun()) {
+            lifecycle.rerun();
+        } else if (overrides.isEmpty()) {
+            lifecycle.run(new String[]{COMMAND_LINE_NAME, arguments.get(1)});
+        } else {
+            lifecycle.run(arguments.get(1), overrides);
+        }
+        if (!lifecycle.isRunning()) {
+            throw new IllegalStateException("The service did not start, see the log of the child JVM");
+        }
+        return uris();
+    }
+
+    private String[] uris() {
+        final LifecycleServerCommand<?> command = lifecycle.getServerCommand();
+        return new String[]{command.getBaseUri().toString(), command.getAdminUri().toString()};
+    }
+
+    private void stopQuietly() {
+        try {
+            if (lifecycle != null && lifecycle.isRunning()) {
+                lifecycle.stop();
+            }
+        } catch (Exception ignored) {
+            // exiting anyway
+        }
+    }
+
+    /* package */ static List<String> read(DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final ImmutableList.Builder<String> strings = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            strings.add(new String(bytes, Charsets.UTF_8));
+        }
+        return strings.build();
+    }
+
+    /* package */ static void write(DataOutputStream out, String first, String... rest) throws IOException {
+        out.writeInt(rest.length + 1);
+        writeString(out, first);
+        for (String string : rest) {
+            writeString(out, string);
+        }
+        out.flush();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        final byte[] bytes = string.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
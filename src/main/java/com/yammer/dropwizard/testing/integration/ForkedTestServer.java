@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.yammer.dropwizard.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * As {@link TestServer}, with the service running in a child JVM of its own, so that the static state of
+ * dropwizard, Jersey, Jackson and the service itself is not shared with the test or with other servers, and
+ * servers can be started in parallel. The children are taken from a {@link ForkedJvmPool}, which keeps them
+ * started ahead of time.
+ *
+ * The service is given by its class, which must have a public no-argument constructor and be on the class path
+ * of the test. The supporting files are copied into the working directory of the child, which is also what
+ * {@link TestServer#SANDBOX_PLACEHOLDER} resolves to in the config overrides. Every start takes a fresh child
+ * and every stop ends it.
+ */
+public class ForkedTestServer {
+    private final Class<?> testClass;
+    private final Class<? extends Service<?>> serviceClass;
+    private final String configFilePath;
+    private final Map<String, String> configOverrides;
+    private final String[] supportingFilesPaths;
+    private ForkedJvmPool pool = ForkedJvmPool.getDefault();
+    private boolean useEphemeralPorts = false;
+    private ForkedChild child;
+    private URI baseUri;
+    private URI adminUri;
+
+    private ForkedTestServer(Class<?> testClass, Class<? extends Service<?>> serviceClass, String configFile,
+                             Map<String, String> configOverrides, String... additionalFiles) {
+        this.testClass = checkNotNull(testClass);
+        this.serviceClass = checkNotNull(serviceClass);
+        this.configFilePath = new File(checkNotNull(configFile)).getAbsolutePath();
+        this.configOverrides = ImmutableMap.copyOf(configOverrides);
+        this.supportingFilesPaths = Arrays.copyOf(additionalFiles, additionalFiles.length);
+    }
+
+    /**
+     * @param testClass the class of the test, whose resources hold the additional files
+     * @param serviceClass the class of the service under test
+     * @param configFile the path to the config file
+     * @param additionalFiles filenames of additional files to be available in the directory the service is run
+     *                        from
+     */
+    public static ForkedTestServer create(Class<?> testClass, Class<? extends Service<?>> serviceClass,
+                                          String configFile, String... additionalFiles) {
+        return new ForkedTestServer(testClass, serviceClass, configFile, ImmutableMap.<String, String>of(),
+                additionalFiles);
+    }
+
+    /**
+     * As {@link #create(Class, Class, String, String...)}, with the values in the config file overridden by the
+     * given map, see {@link TestServer#create(Class, Service, String, Map, String...)}.
+     */
+    public static ForkedTestServer create(Class<?> testClass, Class<? extends Service<?>> serviceClass,
+                                          String configFile, Map<String, String> configOverrides,
+                                          String... additionalFiles) {
+        return new ForkedTestServer(testClass, serviceClass, configFile, checkNotNull(configOverrides),
+                additionalFiles);
+    }
+
+    /**
+     * Takes the children from the given pool instead of {@link ForkedJvmPool#getDefault()}.
+     * @return this server
+     */
+    public ForkedTestServer withPool(ForkedJvmPool pool) {
+        checkState(child == null, "The pool must be chosen before the server is started");
+        this.pool = checkNotNull(pool);
+        return this;
+    }
+
+    /**
+     * See {@link TestServer#withEphemeralPorts()}.
+     * @return this server
+     */
+    public ForkedTestServer withEphemeralPorts() {
+        checkState(child == null, "Ephemeral ports must be chosen before the server is started");
+        this.useEphemeralPorts = true;
+        return this;
+    }
+
+    public void start() throws Exception {
+        checkState(!isRunning(), "The server is already running");
+        child = pool.acquire();
+        try {
+            for (String filename : supportingFilesPaths) {
+                prepareFileForTest(filename);
+            }
+            final List<String> arguments = Lists.newArrayList(serviceClass.getName(), configFilePath,
+                    Boolean.toString(useEphemeralPorts));
+            final String directory = child.getDirectory().toString();
+            for (Map.Entry<String, String> override : configOverrides.entrySet()) {
+                arguments.add(override.getKey());
+                arguments.add(override.getValue().replace(TestServer.SANDBOX_PLACEHOLDER, directory));
+            }
+            setUris(child.call(ForkedServerMain.START, arguments.toArray(new String[arguments.size()])));
+        } catch (Exception e) {
+            closeChild();
+            throw e;
+        }
+    }
+
+    public void restart() throws Exception {
+        if (!isRunning()) {
+            throw new IllegalStateException("Cannot restart a server that has not been started");
+        }
+        setUris(child.call(ForkedServerMain.RESTART));
+    }
+
+    /**
+     * See {@link TestServer#reset()}.
+     * @return how long the reset took in the child, in nanoseconds
+     */
+    public long reset() throws Exception {
+        checkState(child != null, "Cannot reset a server that has not been started");
+        return Long.parseLong(child.call(ForkedServerMain.RESET).get(0));
+    }
+
+    public boolean isRunning() {
+        if (child == null || !child.isAlive()) {
+            return false;
+        }
+        try {
+            return Boolean.parseBoolean(child.call(ForkedServerMain.IS_RUNNING).get(0));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stops the server and ends its child JVM.
+     */
+    public void stop() throws Exception {
+        if (!isRunning()) {
+            throw new IllegalStateException("Cannot stop a server that has not been started");
+        }
+        try {
+            child.call(ForkedServerMain.STOP);
+        } finally {
+            closeChild();
+        }
+    }
+
+    /**
+     * @return the URI the service is served at, e.g., http://localhost:20190/
+     */
+    public URI getBaseUri() {
+        return baseUri;
+    }
+
+    /**
+     * @return the URI the admin servlet is served at, e.g., http://localhost:20191/
+     */
+    public URI getAdminUri() {
+        return adminUri;
+    }
+
+    private void prepareFileForTest(String name) throws IOException {
+        try (InputStream inputStream = testClass.getResourceAsStream(name)) {
+            checkNotNull(inputStream, "No resource %s next to %s", name, testClass.getName());
+            Files.copy(inputStream, child.getDirectory().resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void setUris(List<String> uris) {
+        baseUri = URI.create(uris.get(0));
+        adminUri = URI.create(uris.get(1));
+    }
+
+    private void closeChild() throws IOException {
+        final ForkedChild closing = child;
+        child = null;
+        closing.close();
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.HdrHistogram.Histogram;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.handler.RequestLogHandler;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A request log which keeps the last requests in memory, in a bounded ring buffer, instead of writing them
+ * out. Logging a request is lock free; once the buffer is full the oldest requests are overwritten.
+ * Queries return a snapshot of the requests in the buffer, oldest first:
+ * <pre>
+ * assertThat(requestLog.getEntries("POST", "/users").size(), is(1));
+ * logger.info("Latencies per endpoint:\n{}", requestLog.getLatencySummary());
+ * </pre>
+ */
+public class InMemoryRequestLog extends AbstractLifeCycle implements RequestLog {
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final String START_NANOS_ATTRIBUTE = InMemoryRequestLog.class.getName() + ".start";
+    private final AtomicReferenceArray<RequestLogEntry> entries;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private volatile long clearedUpTo = 0;
+
+    /**
+     * @param capacity the number of requests kept, rounded up to a power of two
+     */
+    public InMemoryRequestLog(int capacity) {
+        checkArgument(capacity > 0 && capacity <= 1 << 30, "The capacity must be between 1 and 2^30");
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.entries = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    @Override
+    public void log(Request request, Response response) {
+        final Object startNanos = request.getAttribute(START_NANOS_ATTRIBUTE);
+        final long latencyNanos = startNanos instanceof Long
+                ? System.nanoTime() - (Long) startNanos
+                : TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - request.getTimeStamp());
+        final long sequence = next.getAndIncrement();
+        entries.set((int) (sequence & mask), new RequestLogEntry(sequence, request.getTimeStamp(), request.getMethod(),
+                request.getRequestURI(), request.getQueryString(), response.getStatus(), response.getContentCount(),
+                latencyNanos, Thread.currentThread().getName()));
+    }
+
+    /**
+     * @return a handler which logs the requests handled by the given handler to this log, timing them with
+     * nanosecond precision rather than from the millisecond timestamp of the request
+     */
+    /* package */ RequestLogHandler wrap(org.eclipse.jetty.server.Handler handler) {
+        final RequestLogHandler requestLogHandler = new RequestLogHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                if (baseRequest.getAttribute(START_NANOS_ATTRIBUTE) == null) {
+                    baseRequest.setAttribute(START_NANOS_ATTRIBUTE, System.nanoTime());
+                }
+                super.handle(target, baseRequest, request, response);
+            }
+        };
+        requestLogHandler.setHandler(handler);
+        requestLogHandler.setRequestLog(this);
+        return requestLogHandler;
+    }
+
+    public List<RequestLogEntry> getEntries() {
+        return getEntries(Predicates.<RequestLogEntry>alwaysTrue());
+    }
+
+    /**
+     * @param method the HTTP method, or null for any
+     * @param pathPrefix e.g. {@code /users}, or null for any
+     */
+    public List<RequestLogEntry> getEntries(final String method, final String pathPrefix) {
+        return getEntries(new Predicate<RequestLogEntry>() {
+            @Override
+            public boolean apply(RequestLogEntry entry) {
+                return (method == null || method.equalsIgnoreCase(entry.getMethod()))
+                        && (pathPrefix == null || entry.getPath().startsWith(pathPrefix));
+            }
+        });
+    }
+
+    public List<RequestLogEntry> getEntries(Predicate<? super RequestLogEntry> predicate) {
+        final long end = next.get();
+        final long start = Math.max(clearedUpTo, end - entries.length());
+        final ImmutableList.Builder<RequestLogEntry> matching = ImmutableList.builder();
+        for (long sequence = start; sequence < end; sequence++) {
+            final RequestLogEntry entry = entries.get((int) (sequence & mask));
+            // null while the request is being written, newer if overwritten since the end was read
+            if (entry != null && entry.getSequence() == sequence && predicate.apply(entry)) {
+                matching.add(entry);
+            }
+        }
+        return matching.build();
+    }
+
+    /**
+     * @return the latencies of the matching requests, in nanoseconds
+     */
+    public Histogram getLatencies(Predicate<? super RequestLogEntry> predicate) {
+        final Histogram histogram = new Histogram(3);
+        for (RequestLogEntry entry : getEntries(predicate)) {
+            histogram.recordValue(entry.getLatencyNanos());
+        }
+        return histogram;
+    }
+
+    /**
+     * @return the latencies of the requests, in nanoseconds, per {@link RequestLogEntry#getEndpoint() endpoint}
+     */
+    public Map<String, Histogram> getLatenciesByEndpoint() {
+        final Map<String, Histogram> latencies = Maps.newTreeMap();
+        for (RequestLogEntry entry : getEntries()) {
+            Histogram histogram = latencies.get(entry.getEndpoint());
+            if (histogram == null) {
+                histogram = new Histogram(3);
+                latencies.put(entry.getEndpoint(), histogram);
+            }
+            histogram.recordValue(entry.getLatencyNanos());
+        }
+        return latencies;
+    }
+
+    /**
+     * @return one line per endpoint with the request count and the p50, p99 and max latencies
+     */
+    public String getLatencySummary() {
+        final StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Histogram> endpoint : getLatenciesByEndpoint().entrySet()) {
+            final Histogram histogram = endpoint.getValue();
+            summary.append(String.format("%-40s %6d requests p50=%.3f ms p99=%.3f ms max=%.3f ms%n", endpoint.getKey(),
+                    histogram.getTotalCount(), millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getMaxValue())));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @return the number of requests logged since the log was created, including the overwritten ones
+     */
+    public long getTotalCount() {
+        return next.get();
+    }
+
+    /**
+     * Drops the requests logged so far from the results of the queries, e.g. between tests.
+     */
+    public void clear() {
+        clearedUpTo = next.get();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
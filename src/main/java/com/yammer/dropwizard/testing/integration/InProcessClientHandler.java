@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Supplier;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.TerminatingClientHandler;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.eclipse.jetty.http.HttpParser;
+import org.eclipse.jetty.io.Buffer;
+import org.eclipse.jetty.io.ByteArrayBuffer;
+import org.eclipse.jetty.server.LocalConnector;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Jersey client handler which, instead of opening a socket, hands the serialized request straight to the
+ * Jetty {@link LocalConnector} of the server under test and parses the response from memory.
+ */
+/* package */ class InProcessClientHandler extends TerminatingClientHandler {
+    private static final String CRLF = "\r\n";
+    private final Supplier<LocalConnector> connectorSupplier;
+
+    /* package */ InProcessClientHandler(Supplier<LocalConnector> connectorSupplier) {
+        this.connectorSupplier = connectorSupplier;
+    }
+
+    @Override
+    public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+        final LocalConnector connector = connectorSupplier.get();
+        if (connector == null || !connector.isRunning()) {
+            throw new ClientHandlerException("The server under test is not running");
+        }
+        try {
+            final ByteArrayBuffer responseBuffer = connector.getResponses(serialize(request), false);
+            if (responseBuffer == null || responseBuffer.length() == 0) {
+                throw new ClientHandlerException("No response received for " + request.getURI());
+            }
+            return parse(request, responseBuffer);
+        } catch (IOException e) {
+            throw new ClientHandlerException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClientHandlerException(e);
+        } catch (ClientHandlerException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ClientHandlerException(e);
+        }
+    }
+
+    private ByteArrayBuffer serialize(ClientRequest request) throws IOException {
+        final URI uri = request.getURI();
+        final StringBuilder head = new StringBuilder();
+        head.append(request.getMethod()).append(' ').append(uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath());
+        if (uri.getRawQuery() != null) {
+            head.append('?').append(uri.getRawQuery());
+        }
+        head.append(" HTTP/1.1").append(CRLF);
+        head.append(HttpHeaders.HOST).append(": ").append(uri.getHost() == null ? "localhost" : uri.getHost());
+        if (uri.getPort() > 0) {
+            head.append(':').append(uri.getPort());
+        }
+        head.append(CRLF);
+        for (Map.Entry<String, List<Object>> header : request.getHeaders().entrySet()) {
+            for (Object value : header.getValue()) {
+                head.append(header.getKey()).append(": ").append(ClientRequest.getHeaderValue(value)).append(CRLF);
+            }
+        }
+
+        final ByteArrayOutputStream entity = new ByteArrayOutputStream();
+        if (request.getEntity() != null) {
+            final RequestEntityWriter entityWriter = getRequestEntityWriter(request);
+            entityWriter.writeRequestEntity(entity);
+            final MediaType mediaType = entityWriter.getMediaType();
+            if (mediaType != null && !request.getHeaders().containsKey(HttpHeaders.CONTENT_TYPE)) {
+                head.append(HttpHeaders.CONTENT_TYPE).append(": ").append(mediaType).append(CRLF);
+            }
+            head.append(HttpHeaders.CONTENT_LENGTH).append(": ").append(entity.size()).append(CRLF);
+        }
+        head.append(CRLF);
+
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream(head.length() + entity.size());
+        serialized.write(head.toString().getBytes(Charsets.ISO_8859_1));
+        entity.writeTo(serialized);
+        return new ByteArrayBuffer(serialized.toByteArray());
+    }
+
+    private ClientResponse parse(ClientRequest request, ByteArrayBuffer responseBuffer) throws IOException {
+        final ResponseCollector collector = new ResponseCollector();
+        final HttpParser parser = new HttpParser(responseBuffer, collector);
+        parser.setHeadResponse("HEAD".equalsIgnoreCase(request.getMethod()));
+        parser.parse();
+        return new ClientResponse(collector.status, collector.headers,
+                new ByteArrayInputStream(collector.content.toByteArray()), getMessageBodyWorkers());
+    }
+
+    private static class ResponseCollector extends HttpParser.EventHandler {
+        private final InBoundHeaders headers = new InBoundHeaders();
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private int status;
+
+        @Override
+        public void startResponse(Buffer version, int status, Buffer reason) {
+            this.status = status;
+        }
+
+        @Override
+        public void parsedHeader(Buffer name, Buffer value) {
+            headers.add(name.toString(), value.toString());
+        }
+
+        @Override
+        public void content(Buffer ref) throws IOException {
+            ref.writeTo(content);
+        }
+
+        @Override
+        public void startRequest(Buffer method, Buffer url, Buffer version) {
+            throw new IllegalStateException("Expected a response, got a request");
+        }
+    }
+}
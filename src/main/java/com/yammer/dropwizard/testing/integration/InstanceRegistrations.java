@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistryListener;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationFilterSupport;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+/**
+ * Tracks the metrics added to the default Metrics registry and the MBeans registered with the platform MBean
+ * server while a service is running, and removes them when it stops, so that gauges holding on to stopped
+ * servers do not pile up over a suite. Registrations cannot be attributed to the service that made them, so
+ * they are shared by all the services running at the time (and by those started later, which may look them
+ * up by name) and reference counted through {@link SharedRegistrations}; the last one to stop removes them.
+ * The metrics of this package, e.g. {@link LifecycleTimings}, and the logging MBean are left alone, as are the
+ * MBeans registered by the services of other class loaders, i.e., of {@link IsolatedTestServer}s.
+ */
+/* package */ final class InstanceRegistrations {
+    private static final String OWN_GROUP = InstanceRegistrations.class.getPackage().getName();
+    private static final ClassLoader OWN_LOADER = InstanceRegistrations.class.getClassLoader();
+    private static final Set<InstanceRegistrations> running = Sets.newHashSet();
+    private static boolean listening = false;
+    private final Set<MetricName> metrics = Sets.newHashSet();
+    private final Set<ObjectName> mBeans = Sets.newHashSet();
+    private Set<MetricName> metricsAtStart;
+    private Set<ObjectName> mBeansAtStart;
+    private Set<Thread> threadsAtStart;
+
+    /**
+     * Starts tracking, if not tracking already.
+     */
+    /* package */ void start() throws Exception {
+        synchronized (InstanceRegistrations.class) {
+            if (running.contains(this)) {
+                return;
+            }
+            listen();
+            metricsAtStart = Sets.newHashSet(Metrics.defaultRegistry().allMetrics().keySet());
+            mBeansAtStart = Sets.newHashSet(mBeanServer().queryNames(null, null));
+            threadsAtStart = Sets.newHashSet(nonDaemonThreads());
+            for (InstanceRegistrations other : running) {
+                for (MetricName name : other.metrics) {
+                    addMetric(name);
+                }
+                for (ObjectName name : other.mBeans) {
+                    addMBean(name);
+                }
+            }
+            running.add(this);
+        }
+    }
+
+    /**
+     * Removes the registrations no other running service shares and stops tracking.
+     * @param checkThreads whether to look for leftover threads, see {@link LeakReport}
+     * @return what is left behind, empty if tracking was not started
+     */
+    /* package */ LeakReport stop(boolean checkThreads) throws Exception {
+        synchronized (InstanceRegistrations.class) {
+            if (!running.remove(this)) {
+                return LeakReport.empty();
+            }
+            for (MetricName name : metrics) {
+                if (SharedRegistrations.release(metricKey(name))) {
+                    Metrics.defaultRegistry().removeMetric(name);
+                }
+            }
+            final MBeanServer mBeanServer = mBeanServer();
+            for (ObjectName name : mBeans) {
+                if (SharedRegistrations.release(mBeanKey(name)) && mBeanServer.isRegistered(name)) {
+                    try {
+                        mBeanServer.unregisterMBean(name);
+                    } catch (InstanceNotFoundException ignored) {
+                        // unregistered concurrently
+                    }
+                }
+            }
+            metrics.clear();
+            mBeans.clear();
+            return leakReport(checkThreads && running.isEmpty());
+        }
+    }
+
+    private LeakReport leakReport(boolean checkThreads) {
+        final Set<MetricName> leftMetrics = Sets.newTreeSet();
+        for (MetricName name : Metrics.defaultRegistry().allMetrics().keySet()) {
+            if (!metricsAtStart.contains(name) && isTracked(name) && !isSharedMetric(name)) {
+                leftMetrics.add(name);
+            }
+        }
+        final Set<ObjectName> leftMBeans = Sets.newTreeSet();
+        for (ObjectName name : mBeanServer().queryNames(null, null)) {
+            if (!mBeansAtStart.contains(name) && isTracked(name) && !isSharedMBean(name)) {
+                leftMBeans.add(name);
+            }
+        }
+        final ImmutableList.Builder<String> leftThreads = ImmutableList.builder();
+        if (checkThreads) {
+            for (Thread thread : nonDaemonThreads()) {
+                if (!threadsAtStart.contains(thread)) {
+                    leftThreads.add(thread.getName());
+                }
+            }
+        }
+        return new LeakReport(leftMetrics, leftMBeans, leftThreads.build());
+    }
+
+    private static boolean isSharedMetric(MetricName name) {
+        for (InstanceRegistrations other : running) {
+            if (other.metrics.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSharedMBean(ObjectName name) {
+        for (InstanceRegistrations other : running) {
+            if (other.mBeans.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addMetric(MetricName name) {
+        if (metrics.add(name)) {
+            SharedRegistrations.acquire(metricKey(name));
+        }
+    }
+
+    private void addMBean(ObjectName name) {
+        if (mBeans.add(name)) {
+            SharedRegistrations.acquire(mBeanKey(name));
+        }
+    }
+
+    private static boolean isTracked(MetricName name) {
+        return !OWN_GROUP.equals(name.getGroup());
+    }
+
+    private static boolean isTracked(ObjectName name) {
+        return !OWN_GROUP.equals(name.getDomain()) && !SharedRegistrations.LOGGING_MBEAN_NAME.equals(name.toString())
+                && isVisible(name);
+    }
+
+    // an MBean whose class this package cannot see belongs to the copy of this package of another class loader
+    private static boolean isVisible(ObjectName name) {
+        final ClassLoader mBeanLoader;
+        try {
+            mBeanLoader = mBeanServer().getClassLoaderFor(name);
+        } catch (InstanceNotFoundException e) {
+            return false;
+        }
+        for (ClassLoader loader = OWN_LOADER; loader != null; loader = loader.getParent()) {
+            if (loader == mBeanLoader) {
+                return true;
+            }
+        }
+        return mBeanLoader == null;
+    }
+
+    private static String metricKey(MetricName name) {
+        return "metric:" + name.getMBeanName();
+    }
+
+    private static String mBeanKey(ObjectName name) {
+        return "mbean:" + name;
+    }
+
+    private static MBeanServer mBeanServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    private static Set<Thread> nonDaemonThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads = new Thread[root.activeCount() + 16];
+        int count;
+        while ((count = root.enumerate(threads, true)) == threads.length) {
+            threads = new Thread[threads.length * 2];
+        }
+        final Set<Thread> nonDaemon = Sets.newHashSet();
+        for (int i = 0; i < count; i++) {
+            if (!threads[i].isDaemon() && threads[i].isAlive()) {
+                nonDaemon.add(threads[i]);
+            }
+        }
+        return nonDaemon;
+    }
+
+    private static void listen() throws Exception {
+        if (listening) {
+            return;
+        }
+        // notified of the metrics already registered, none of which is attributed as nothing is running yet
+        Metrics.defaultRegistry().addListener(new MetricsRegistryListener() {
+            @Override
+            public void onMetricAdded(MetricName name, Metric metric) {
+                if (isTracked(name)) {
+                    synchronized (InstanceRegistrations.class) {
+                        for (InstanceRegistrations registrations : running) {
+                            registrations.addMetric(name);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void onMetricRemoved(MetricName name) {
+            }
+        });
+        final NotificationFilterSupport registrationsOnly = new NotificationFilterSupport();
+        registrationsOnly.enableType(MBeanServerNotification.REGISTRATION_NOTIFICATION);
+        mBeanServer().addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                final ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+                if (isTracked(name)) {
+                    synchronized (InstanceRegistrations.class) {
+                        for (InstanceRegistrations registrations : running) {
+                            registrations.addMBean(name);
+                        }
+                    }
+                }
+            }
+        }, registrationsOnly, null);
+        listening = true;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Creates the class loaders of {@link IsolatedTestServer}s. The class path of the test is split in two: the
+ * shared libraries, which hold no per service state worth isolating and are loaded once by a parent loader
+ * cached for the whole JVM, and everything else (dropwizard, Jetty, Jersey, Metrics, this library, the service
+ * under test), which every server loads again in a child loader of its own. A shared library must not depend on
+ * an isolated one.
+ */
+/* package */ final class IsolatedClassLoaders {
+    /**
+     * The file name prefixes of the jars loaded once for all the isolated servers. Logback and slf4j are not
+     * among them: dropwizard configures logging through static state, e.g. the converters of its log format.
+     */
+    /* package */ static final List<String> DEFAULT_SHARED_LIBRARIES = ImmutableList.of(
+            "guava-", "jsr305-", "jackson-annotations-", "jackson-core-", "jackson-databind-",
+            "jackson-dataformat-yaml-", "jackson-datatype-", "snakeyaml-", "joda-time-", "validation-api-",
+            "hibernate-validator-", "jboss-logging-", "classmate-", "argparse4j-", "commons-codec-",
+            "commons-logging-", "httpcore-", "httpclient-", "HdrHistogram-", "asm-");
+    private static final Map<List<URL>, ClassLoader> sharedLoaders = Maps.newHashMap();
+
+    private IsolatedClassLoaders() {
+    }
+
+    /**
+     * @param sharedLibraries the file name prefixes of the jars to share, e.g. {@link #DEFAULT_SHARED_LIBRARIES}
+     * @return a new loader for the isolated part of the class path, whose parent loads the shared part
+     */
+    /* package */ static URLClassLoader create(List<String> sharedLibraries) throws IOException {
+        final List<URL> shared = Lists.newArrayList();
+        final List<URL> isolated = Lists.newArrayList();
+        for (URL entry : classPath()) {
+            if (isShared(entry, sharedLibraries)) {
+                shared.add(entry);
+            } else {
+                isolated.add(entry);
+            }
+        }
+        return new IsolatedLoader(isolated.toArray(new URL[isolated.size()]), sharedLoader(shared));
+    }
+
+    /**
+     * @return whether this copy of the library was loaded by the class loader of an isolated server, rather than
+     * by the loader of the test
+     */
+    /* package */ static boolean isIsolated() {
+        final ClassLoader loader = IsolatedClassLoaders.class.getClassLoader();
+        // the loader is an instance of the class of the test's copy, which is not the class of this copy
+        return loader != null && loader.getClass().getName().equals(IsolatedLoader.class.getName());
+    }
+
+    private static synchronized ClassLoader sharedLoader(List<URL> shared) {
+        ClassLoader loader = sharedLoaders.get(shared);
+        if (loader == null) {
+            // the parent of the application class loader sees the JDK only
+            loader = new URLClassLoader(shared.toArray(new URL[shared.size()]),
+                    ClassLoader.getSystemClassLoader().getParent());
+            sharedLoaders.put(ImmutableList.copyOf(shared), loader);
+        }
+        return loader;
+    }
+
+    /**
+     * The loader of a server's own copy of the isolated libraries, a class of its own so that it can be told apart.
+     */
+    private static final class IsolatedLoader extends URLClassLoader {
+        private IsolatedLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+    }
+
+    private static boolean isShared(URL entry, List<String> sharedLibraries) {
+        final String path = entry.getPath();
+        if (!path.endsWith(".jar")) {
+            return false;
+        }
+        final String name = path.substring(path.lastIndexOf('/') + 1);
+        for (String prefix : sharedLibraries) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the entries of the class path of the JVM, including those listed in the manifests of its jars, as
+     * in the manifest only jar surefire runs the tests with
+     */
+    private static List<URL> classPath() throws IOException {
+        final Set<URL> entries = Sets.newLinkedHashSet();
+        for (String path : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(System.getProperty("java.class.path"))) {
+            addWithManifestClassPath(new File(path).toURI().toURL(), entries);
+        }
+        return ImmutableList.copyOf(entries);
+    }
+
+    private static void addWithManifestClassPath(URL entry, Set<URL> entries) throws IOException {
+        if (!entries.add(entry) || !entry.getPath().endsWith(".jar")) {
+            return;
+        }
+        final File file;
+        try {
+            file = new File(entry.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return; // not a local file
+        }
+        if (!file.isFile()) {
+            return;
+        }
+        try (JarFile jar = new JarFile(file)) {
+            final Manifest manifest = jar.getManifest();
+            final String classPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+            if (classPath != null) {
+                for (String relative : Splitter.on(' ').omitEmptyStrings().split(classPath)) {
+                    addWithManifestClassPath(new URL(entry, relative), entries);
+                }
+            }
+        }
+    }
+}
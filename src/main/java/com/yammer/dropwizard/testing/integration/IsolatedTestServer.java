@@ -0,0 +1,342 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.yammer.dropwizard.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * As {@link TestServer}, with the service, dropwizard, Jetty, Jersey and Metrics loaded by a class loader of the
+ * server's own, so that their static state (e.g. the default health check and Metrics registries) is private
+ * to it and several instances of the same service can run side by side in one JVM. The libraries without such
+ * state (Guava, Jackson, logging, validation, ...) are loaded once by a parent loader shared by all the
+ * isolated servers, so a server costs a fraction of a {@link ForkedTestServer} child JVM.
+ *
+ * Nothing loaded by the server's class loader is handed to the test: the server is driven through the
+ * commands of {@link ForkedServerMain}, called reflectively with strings as arguments and results. The service
+ * is hence given by its class, which must have a public no-argument constructor.
+ */
+public class IsolatedTestServer {
+    private static final Logger logger = LoggerFactory.getLogger(IsolatedTestServer.class);
+    private final Class<?> testClass;
+    private final Class<? extends Service<?>> serviceClass;
+    private final String configFilePath;
+    private final Map<String, String> configOverrides;
+    private final String[] supportingFilesPaths;
+    private final List<String> filesToBeDeleted = Lists.newArrayList();
+    private List<String> sharedLibraries = IsolatedClassLoaders.DEFAULT_SHARED_LIBRARIES;
+    private boolean useEphemeralPorts = false;
+    private Path sandboxParent;
+    private Sandbox sandbox;
+    private URLClassLoader classLoader;
+    private Object main;
+    private Method handle;
+    private URI baseUri;
+    private URI adminUri;
+
+    private IsolatedTestServer(Class<?> testClass, Class<? extends Service<?>> serviceClass, String configFile,
+                               Map<String, String> configOverrides, String... additionalFiles) {
+        this.testClass = checkNotNull(testClass);
+        this.serviceClass = checkNotNull(serviceClass);
+        this.configFilePath = checkNotNull(configFile);
+        this.configOverrides = ImmutableMap.copyOf(configOverrides);
+        this.supportingFilesPaths = Arrays.copyOf(additionalFiles, additionalFiles.length);
+    }
+
+    /**
+     * @param testClass the class of the test, whose resources hold the additional files
+     * @param serviceClass the class of the service under test
+     * @param configFile the path to the config file
+     * @param additionalFiles filenames of additional files to be available at the same path as the server run
+     *                        directory
+     */
+    public static IsolatedTestServer create(Class<?> testClass, Class<? extends Service<?>> serviceClass,
+                                            String configFile, String... additionalFiles) {
+        return new IsolatedTestServer(testClass, serviceClass, configFile, ImmutableMap.<String, String>of(),
+                additionalFiles);
+    }
+
+    /**
+     * As {@link #create(Class, Class, String, String...)}, with the values in the config file overridden by the
+     * given map, see {@link TestServer#create(Class, Service, String, Map, String...)}.
+     */
+    public static IsolatedTestServer create(Class<?> testClass, Class<? extends Service<?>> serviceClass,
+                                            String configFile, Map<String, String> configOverrides,
+                                            String... additionalFiles) {
+        return new IsolatedTestServer(testClass, serviceClass, configFile, checkNotNull(configOverrides),
+                additionalFiles);
+    }
+
+    /**
+     * See {@link TestServer#withEphemeralPorts()}.
+     * @return this server
+     */
+    public IsolatedTestServer withEphemeralPorts() {
+        checkState(main == null, "Ephemeral ports must be chosen before the server is started");
+        this.useEphemeralPorts = true;
+        return this;
+    }
+
+    /**
+     * See {@link TestServer#withSandbox()}.
+     * @return this server
+     */
+    public IsolatedTestServer withSandbox() {
+        return withSandbox(Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * See {@link TestServer#withSandbox(Path)}.
+     * @return this server
+     */
+    public IsolatedTestServer withSandbox(Path parent) {
+        checkState(main == null, "The server has already been started");
+        checkState(sandboxParent == null, "The server already has a sandbox");
+        this.sandboxParent = checkNotNull(parent);
+        return this;
+    }
+
+    /**
+     * Replaces {@link #getDefaultSharedLibraries() the libraries loaded once for all isolated servers}. A shared
+     * library must not depend on an isolated one.
+     * @param jarNamePrefixes the file name prefixes of the jars to share, e.g. {@code guava-}
+     * @return this server
+     */
+    public IsolatedTestServer withSharedLibraries(List<String> jarNamePrefixes) {
+        checkState(classLoader == null, "The shared libraries must be chosen before the server is started");
+        this.sharedLibraries = ImmutableList.copyOf(jarNamePrefixes);
+        return this;
+    }
+
+    public static List<String> getDefaultSharedLibraries() {
+        return IsolatedClassLoaders.DEFAULT_SHARED_LIBRARIES;
+    }
+
+    /**
+     * Starts the server, in a new class loader: the one of the last start is closed by {@link #stop()}, or at once
+     * with the staged files if the start fails.
+     */
+    public void start() throws Exception {
+        checkState(!isRunning(), "The server is already running");
+        if (main == null) {
+            load();
+        }
+        SharedRegistrations.acquireLoggingMBean(); // before dropwizard would register its own, see there
+        try {
+            startService();
+        } catch (Exception e) {
+            try {
+                cleanUpFiles();
+            } catch (IOException cleanUpFailure) {
+                logger.warn("Unable to clean up the files of the isolated server", cleanUpFailure);
+            }
+            try {
+                unload();
+            } catch (IOException unloadFailure) {
+                logger.warn("Unable to close the class loader of the isolated server", unloadFailure);
+            }
+            SharedRegistrations.releaseLoggingMBean();
+            throw e;
+        }
+    }
+
+    private void startService() throws Exception {
+        if (sandboxParent != null && sandbox == null) {
+            sandbox = Sandbox.create(sandboxParent);
+        }
+        setUpFiles();
+        final List<String> arguments = Lists.newArrayList(serviceClass.getName(), configFilePath,
+                Boolean.toString(useEphemeralPorts));
+        for (Map.Entry<String, String> override : configOverrides.entrySet()) {
+            arguments.add(override.getKey());
+            arguments.add(sandbox == null ? override.getValue()
+                    : override.getValue().replace(TestServer.SANDBOX_PLACEHOLDER, sandbox.getDirectory().toString()));
+        }
+        setUris(call(ForkedServerMain.START, arguments));
+    }
+
+    public void restart() throws Exception {
+        if (!isRunning()) {
+            throw new IllegalStateException("Cannot restart a server that has not been started");
+        }
+        setUris(call(ForkedServerMain.RESTART, ImmutableList.<String>of()));
+    }
+
+    /**
+     * See {@link TestServer#reset()}.
+     * @return how long the reset took, in nanoseconds
+     */
+    public long reset() throws Exception {
+        checkState(main != null, "Cannot reset a server that has not been started");
+        return Long.parseLong(call(ForkedServerMain.RESET, ImmutableList.<String>of())[0]);
+    }
+
+    public boolean isRunning() {
+        if (main == null) {
+            return false;
+        }
+        try {
+            return Boolean.parseBoolean(call(ForkedServerMain.IS_RUNNING, ImmutableList.<String>of())[0]);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public void stop() throws Exception {
+        if (!isRunning()) {
+            throw new IllegalStateException("Cannot stop a server that has not been started");
+        }
+        try {
+            call(ForkedServerMain.STOP, ImmutableList.<String>of());
+            cleanUpFiles();
+        } finally {
+            unload();
+            SharedRegistrations.releaseLoggingMBean();
+        }
+    }
+
+    /**
+     * @return the URI the service is served at, e.g., http://localhost:20190/
+     */
+    public URI getBaseUri() {
+        return baseUri;
+    }
+
+    /**
+     * @return the URI the admin servlet is served at, e.g., http://localhost:20191/
+     */
+    public URI getAdminUri() {
+        return adminUri;
+    }
+
+    /**
+     * @return the directory the supporting files are staged into. Requires {@link #withSandbox()} and a
+     * {@link #start()}.
+     */
+    public Path getSandbox() {
+        checkState(sandboxParent != null, "The server has no sandbox, see withSandbox()");
+        checkState(sandbox != null, "The sandbox is created on start");
+        return sandbox.getDirectory();
+    }
+
+    /**
+     * @return the class loader of the running service, e.g. to look into its static state from a test
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    private void load() throws Exception {
+        classLoader = IsolatedClassLoaders.create(sharedLibraries);
+        final Class<?> mainClass = classLoader.loadClass(ForkedServerMain.class.getName());
+        checkState(mainClass.getClassLoader() == classLoader,
+                "This library must not be one of the shared libraries, it is loaded by %s", mainClass.getClassLoader());
+        final Constructor<?> constructor = mainClass.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        handle = mainClass.getDeclaredMethod("handle", String.class, List.class);
+        handle.setAccessible(true);
+        main = constructor.newInstance();
+    }
+
+    /**
+     * Stops the threads the libraries of the server left running and closes its class loader, along with the jars
+     * it opened, so that nothing keeps the loader alive.
+     */
+    private void unload() throws IOException {
+        try {
+            call(ForkedServerMain.UNLOAD, ImmutableList.<String>of());
+        } catch (Exception e) {
+            logger.warn("Unable to stop the threads of the isolated server", e);
+        } finally {
+            main = null;
+            handle = null;
+            classLoader.close();
+            classLoader = null;
+        }
+    }
+
+    /**
+     * Runs a command of {@link ForkedServerMain} with the class loader of the service as the context class
+     * loader, which is what the threads of the server inherit and Jersey looks up its providers with.
+     */
+    private String[] call(String command, List<String> arguments) throws Exception {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            return (String[]) handle.invoke(main, command, arguments);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private void setUris(String[] uris) {
+        baseUri = URI.create(uris[0]);
+        adminUri = URI.create(uris[1]);
+    }
+
+    private void setUpFiles() throws IOException {
+        if (sandbox != null) {
+            sandbox.stage(testClass, supportingFilesPaths);
+            return;
+        }
+        for (String filename : supportingFilesPaths) {
+            filesToBeDeleted.add(filename);
+            try (InputStream inputStream = testClass.getResourceAsStream(filename)) {
+                Files.copy(inputStream, new File(filename).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private void cleanUpFiles() throws IOException {
+        if (sandbox != null) {
+            sandbox.delete();
+            return;
+        }
+        for (String filename : filesToBeDeleted) {
+            (new File(filename)).delete();
+        }
+        filesToBeDeleted.clear();
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The latencies a {@link FaultRule} adds to requests, e.g. a fast path with a slow tail:
+ * <pre>
+ * LatencyDistribution.uniform(5, 10, MILLISECONDS).withTail(0.01, LatencyDistribution.fixed(2, SECONDS))
+ * </pre>
+ */
+public abstract class LatencyDistribution {
+    public static final LatencyDistribution NONE = fixed(0, TimeUnit.NANOSECONDS);
+
+    /**
+     * @return a latency, in nanoseconds
+     */
+    /* package */ abstract long sampleNanos(Random random);
+
+    public static LatencyDistribution fixed(long latency, TimeUnit unit) {
+        checkArgument(latency >= 0, "The latency cannot be negative");
+        final long nanos = unit.toNanos(latency);
+        return new LatencyDistribution() {
+            @Override
+            long sampleNanos(Random random) {
+                return nanos;
+            }
+        };
+    }
+
+    public static LatencyDistribution uniform(long min, long max, TimeUnit unit) {
+        checkArgument(min >= 0 && max >= min, "The latencies must be 0 <= min <= max");
+        final long minNanos = unit.toNanos(min);
+        final long rangeNanos = unit.toNanos(max) - minNanos;
+        return new LatencyDistribution() {
+            @Override
+            long sampleNanos(Random random) {
+                return minNanos + (long) (random.nextDouble() * rangeNanos);
+            }
+        };
+    }
+
+    /**
+     * @return exponentially distributed latencies, i.e., mostly short with an unbounded tail, as of a queue
+     */
+    public static LatencyDistribution exponential(long mean, TimeUnit unit) {
+        checkArgument(mean >= 0, "The latency cannot be negative");
+        final long meanNanos = unit.toNanos(mean);
+        return new LatencyDistribution() {
+            @Override
+            long sampleNanos(Random random) {
+                return (long) (-Math.log(1 - random.nextDouble()) * meanNanos);
+            }
+        };
+    }
+
+    /**
+     * @return a distribution which takes the latency from the given tail with the given probability, and from
+     * this one otherwise
+     */
+    public LatencyDistribution withTail(final double probability, final LatencyDistribution tail) {
+        checkArgument(probability >= 0 && probability <= 1, "The probability must be between 0 and 1");
+        checkNotNull(tail);
+        final LatencyDistribution body = this;
+        return new LatencyDistribution() {
+            @Override
+            long sampleNanos(Random random) {
+                return random.nextDouble() < probability ? tail.sampleNanos(random) : body.sampleNanos(random);
+            }
+        };
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.yammer.metrics.core.MetricName;
+
+import javax.management.ObjectName;
+import java.util.Set;
+
+/**
+ * What a stopped service left behind in the JVM: metrics in the default registry and MBeans registered since
+ * the service was started which are not owned by another running service, and the non-daemon threads started
+ * since then. Threads cannot be attributed to a service, so they are only checked when no other service is
+ * running, and not on a restart, which keeps the Jetty thread pool.
+ */
+public class LeakReport {
+    private final Set<MetricName> metrics;
+    private final Set<ObjectName> mBeans;
+    private final ImmutableList<String> threads;
+
+    /* package */ LeakReport(Set<MetricName> metrics, Set<ObjectName> mBeans, ImmutableList<String> threads) {
+        this.metrics = ImmutableSet.copyOf(metrics);
+        this.mBeans = ImmutableSet.copyOf(mBeans);
+        this.threads = threads;
+    }
+
+    /* package */ static LeakReport empty() {
+        return new LeakReport(ImmutableSet.<MetricName>of(), ImmutableSet.<ObjectName>of(), ImmutableList.<String>of());
+    }
+
+    public Set<MetricName> getMetrics() {
+        return metrics;
+    }
+
+    public Set<ObjectName> getMBeans() {
+        return mBeans;
+    }
+
+    /**
+     * @return the names of the leftover non-daemon threads
+     */
+    public ImmutableList<String> getThreads() {
+        return threads;
+    }
+
+    public boolean isClean() {
+        return metrics.isEmpty() && mBeans.isEmpty() && threads.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        if (isClean()) {
+            return "nothing left behind";
+        }
+        final Joiner joiner = Joiner.on(", ");
+        return String.format("%d metrics [%s], %d MBeans [%s], %d non-daemon threads [%s]",
+                metrics.size(), joiner.join(metrics), mBeans.size(), joiner.join(mBeans), threads.size(), joiner.join(threads));
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableMap;
+import org.eclipse.jetty.server.AbstractConnector;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.AbstractNIOConnector;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A small footprint for test servers, applied to the Jetty server dropwizard builds from the configuration, so
+ * that many servers fit on one machine without changing the production YAML. By default the application
+ * connector gets one acceptor (and, for the nonblocking connector, one selector) and a pool of 2 to 16 threads,
+ * the admin connector a pool of 1 to 4 threads instead of 8, and the buffers are a few kilobytes on the heap
+ * instead of tens of kilobytes of direct memory. The effective values are reported by
+ * {@link LifecycleServerCommand#getEffectiveProfile()} once the server has started.
+ */
+public final class LeanProfile {
+    private final int minThreads;
+    private final int maxThreads;
+    private final int acceptors;
+    private final int adminMinThreads;
+    private final int adminMaxThreads;
+    private final int bufferSize;
+    private final int headerSize;
+    private final int threadIdleTimeMillis;
+
+    private LeanProfile(int minThreads, int maxThreads, int acceptors, int adminMinThreads, int adminMaxThreads,
+                        int bufferSize, int headerSize, int threadIdleTimeMillis) {
+        checkArgument(0 < minThreads && minThreads <= maxThreads, "Invalid thread range %s-%s", minThreads, maxThreads);
+        checkArgument(0 < adminMinThreads && adminMinThreads <= adminMaxThreads, "Invalid admin thread range %s-%s",
+                adminMinThreads, adminMaxThreads);
+        // the acceptors and selectors of the nonblocking connector run on the pool of the server
+        checkArgument(0 < acceptors && 2 * acceptors < maxThreads, "%s acceptors leave no thread of %s for requests",
+                acceptors, maxThreads);
+        checkArgument(bufferSize > 0 && headerSize > 0, "The buffers cannot be empty");
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.acceptors = acceptors;
+        this.adminMinThreads = adminMinThreads;
+        this.adminMaxThreads = adminMaxThreads;
+        this.bufferSize = bufferSize;
+        this.headerSize = headerSize;
+        this.threadIdleTimeMillis = threadIdleTimeMillis;
+    }
+
+    public static LeanProfile create() {
+        return new LeanProfile(2, 16, 1, 1, 4, 8 * 1024, 4 * 1024, 5000);
+    }
+
+    /**
+     * @return this profile with the given size of the thread pool of the application connector
+     */
+    public LeanProfile withThreads(int min, int max) {
+        return new LeanProfile(min, max, acceptors, adminMinThreads, adminMaxThreads, bufferSize, headerSize,
+                threadIdleTimeMillis);
+    }
+
+    /**
+     * @return this profile with the given number of acceptors, and of selectors, of the application connector
+     */
+    public LeanProfile withAcceptors(int acceptors) {
+        return new LeanProfile(minThreads, maxThreads, acceptors, adminMinThreads, adminMaxThreads, bufferSize,
+                headerSize, threadIdleTimeMillis);
+    }
+
+    /**
+     * @return this profile with the given size of the thread pool of the admin connector
+     */
+    public LeanProfile withAdminThreads(int min, int max) {
+        return new LeanProfile(minThreads, maxThreads, acceptors, min, max, bufferSize, headerSize,
+                threadIdleTimeMillis);
+    }
+
+    /**
+     * @param bufferSize the size of the request and response buffers, in bytes
+     * @param headerSize the size of the request and response header buffers, in bytes, i.e., the largest headers
+     *                   accepted
+     * @return this profile with the given buffer sizes
+     */
+    public LeanProfile withBufferSizes(int bufferSize, int headerSize) {
+        return new LeanProfile(minThreads, maxThreads, acceptors, adminMinThreads, adminMaxThreads, bufferSize,
+                headerSize, threadIdleTimeMillis);
+    }
+
+    /**
+     * Shrinks the thread pools, acceptors and buffers of the given server, which has not been started yet.
+     * @param adminConnectorName the name of the admin connector, the other connectors being the application's
+     */
+    /* package */ void applyTo(Server server, String adminConnectorName) {
+        shrink(server.getThreadPool(), minThreads, maxThreads);
+        for (Connector connector : server.getConnectors()) {
+            if (!isNetworkConnector(connector)) {
+                continue;
+            }
+            final AbstractConnector abstractConnector = (AbstractConnector) connector;
+            if (adminConnectorName.equals(connector.getName())) {
+                shrink(abstractConnector.getThreadPool(), adminMinThreads, adminMaxThreads);
+            } else {
+                abstractConnector.setAcceptors(acceptors);
+            }
+            abstractConnector.setRequestBufferSize(bufferSize);
+            abstractConnector.setResponseBufferSize(bufferSize);
+            abstractConnector.setRequestHeaderSize(headerSize);
+            abstractConnector.setResponseHeaderSize(headerSize);
+            if (connector instanceof AbstractNIOConnector) {
+                ((AbstractNIOConnector) connector).setUseDirectBuffers(false);
+            }
+        }
+    }
+
+    // the in-process transport has neither sockets nor threads of its own
+    private static boolean isNetworkConnector(Connector connector) {
+        return connector instanceof AbstractConnector && !(connector instanceof LocalConnector);
+    }
+
+    private void shrink(ThreadPool threadPool, int min, int max) {
+        if (threadPool instanceof QueuedThreadPool) {
+            final QueuedThreadPool pool = (QueuedThreadPool) threadPool;
+            pool.setMaxThreads(max);
+            pool.setMinThreads(min);
+            pool.setMaxIdleTimeMs(threadIdleTimeMillis);
+        }
+    }
+
+    /**
+     * @return the thread pool sizes, acceptors, selectors and buffer sizes of the given started server, by
+     * connector name, e.g. {@code main.acceptors}
+     */
+    /* package */ static Map<String, Object> describe(Server server) {
+        final ImmutableMap.Builder<String, Object> values = ImmutableMap.builder();
+        describe(values, "server", server.getThreadPool());
+        for (Connector connector : server.getConnectors()) {
+            if (!isNetworkConnector(connector)) {
+                continue;
+            }
+            final AbstractConnector abstractConnector = (AbstractConnector) connector;
+            final String name = connector.getName();
+            values.put(name + ".acceptors", abstractConnector.getAcceptors());
+            if (connector instanceof SelectChannelConnector) {
+                values.put(name + ".selectors", ((SelectChannelConnector) connector).getSelectorManager().getSelectSets());
+            }
+            if (abstractConnector.getThreadPool() != server.getThreadPool()) {
+                describe(values, name, abstractConnector.getThreadPool());
+            }
+            values.put(name + ".requestBufferSize", abstractConnector.getRequestBufferSize());
+            values.put(name + ".requestHeaderSize", abstractConnector.getRequestHeaderSize());
+            values.put(name + ".responseBufferSize", abstractConnector.getResponseBufferSize());
+            values.put(name + ".responseHeaderSize", abstractConnector.getResponseHeaderSize());
+            if (connector instanceof AbstractNIOConnector) {
+                values.put(name + ".directBuffers", ((AbstractNIOConnector) connector).getUseDirectBuffers());
+            }
+        }
+        return values.build();
+    }
+
+    private static void describe(ImmutableMap.Builder<String, Object> values, String name, ThreadPool threadPool) {
+        if (threadPool instanceof QueuedThreadPool) {
+            final QueuedThreadPool pool = (QueuedThreadPool) threadPool;
+            values.put(name + ".minThreads", pool.getMinThreads());
+            values.put(name + ".maxThreads", pool.getMaxThreads());
+            values.put(name + ".threads", pool.getThreads());
+        }
+    }
+}
@@ -15,38 +15,117 @@
  */
 package com.yammer.dropwizard.testing.integration;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.yammer.dropwizard.Service;
 import com.yammer.dropwizard.cli.EnvironmentCommand;
 import com.yammer.dropwizard.cli.ServerCommand;
+import com.yammer.dropwizard.config.Bootstrap;
 import com.yammer.dropwizard.config.Configuration;
 import com.yammer.dropwizard.config.Environment;
 import com.yammer.dropwizard.config.EnvironmentFriend;
+import com.yammer.dropwizard.config.HttpConfiguration;
+import com.yammer.dropwizard.config.LoggingFactory;
 import com.yammer.dropwizard.config.ServerFactory;
 import com.yammer.dropwizard.lifecycle.ServerLifecycleListener;
+import com.yammer.dropwizard.tasks.Task;
+import com.yammer.dropwizard.validation.Validator;
 import com.yammer.metrics.HealthChecks;
 import com.yammer.metrics.core.HealthCheck;
 import net.sourceforge.argparse4j.inf.Namespace;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.HandlerCollection;
+import org.eclipse.jetty.server.handler.RequestLogHandler;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.server.ssl.SslConnector;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.management.MBeanServer;
-import javax.management.ObjectName;
-import java.lang.management.ManagementFactory;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 
 public class LifecycleServerCommand<T extends Configuration> extends EnvironmentCommand<T> {
     public static final String COMMAND_LINE_NAME = "test-server";
     private final static Logger logger = LoggerFactory.getLogger(ServerCommand.class);
+    private static final String DEADLOCK_HEALTH_CHECK_NAME = "deadlocks";
+    private static final String MAIN_CONNECTOR_NAME = "main";
+    private static final String ADMIN_CONNECTOR_NAME = "internal";
+    private static final String RESET_TASK_NAME = "reset";
+    private static final long DRAIN_POLL_MILLIS = 10;
+    private static final ExecutorService STOP_CLEANUP = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("test-server-cleanup-%d").build());
+    private final Service<T> service;
     private final Class<T> configurationClass;
-    private Server server;
+    private final LifecycleTimeline timeline;
+    private final Resettable resettable;
+    private final List<String> acquiredHealthChecks = Lists.newArrayList();
+    private final InstanceRegistrations registrations = new InstanceRegistrations();
+    private volatile LeakReport leakReport = LeakReport.empty();
+    private volatile boolean useEphemeralPorts = false;
+    private volatile boolean useInProcessTransport = false;
+    private volatile Server server;
+    private volatile LocalConnector localConnector;
+    private volatile InMemoryRequestLog requestLog;
+    private volatile RequestAccounting requestAccounting;
+    private volatile TrafficRecorder trafficRecorder;
+    private volatile LeanProfile leanProfile;
+    private volatile long drainTimeoutNanos = -1;
+    private volatile DrainingHandler statistics;
+    private volatile DrainReport drainReport = DrainReport.empty();
+    private volatile Map<String, Object> effectiveProfile = ImmutableMap.of();
+    private T configuration;
+    private Namespace namespace;
+    private HttpConfiguration httpConfiguration;
     private EnvironmentFriend startUpEnvironment;
+    // kept between a stop and the following warm start, see stop(boolean)
+    private ThreadPool retainedThreadPool;
+    private int retainedPort = 0;
+    private int retainedAdminPort = 0;
 
 
     public LifecycleServerCommand(Service<T> service, Class<T> configurationClass) {
+        this(new TimedService<>(service), configurationClass);
+    }
+
+    private LifecycleServerCommand(TimedService<T> service, Class<T> configurationClass) {
         super(service, COMMAND_LINE_NAME, "Test version of the server command, which enables server shutdown.");
+        this.service = service;
         this.configurationClass = configurationClass;
+        this.timeline = service.timeline;
+        this.resettable = findResettable(service);
+    }
+
+    private static Resettable findResettable(Service<?> service) {
+        Service<?> candidate = service;
+        while (!(candidate instanceof Resettable) && candidate instanceof ServiceWrapper) {
+            candidate = ((ServiceWrapper<?>) candidate).getDelegate();
+        }
+        return candidate instanceof Resettable ? (Resettable) candidate : null;
     }
 
     /**
@@ -58,57 +137,617 @@ public class LifecycleServerCommand<T extends Configuration> extends Environment
         return configurationClass;
     }
 
+    /**
+     * When set, both the application and the admin connectors are bound to port 0, i.e., to whatever
+     * free ports the OS hands out, regardless of the ports in the configuration file. This allows several
+     * servers to run in one JVM. The actual ports are available through {@link #getBaseUri()} and
+     * {@link #getAdminUri()} once the server is started.
+     */
+    public void setUseEphemeralPorts(boolean useEphemeralPorts) {
+        this.useEphemeralPorts = useEphemeralPorts;
+    }
+
+    /**
+     * When set, a Jetty {@link LocalConnector} is attached to the server next to the regular connectors,
+     * so that requests can be dispatched to the service in memory, see {@link #getLocalConnector()}.
+     */
+    public void setUseInProcessTransport(boolean useInProcessTransport) {
+        this.useInProcessTransport = useInProcessTransport;
+    }
+
+    public boolean isUseInProcessTransport() {
+        return useInProcessTransport;
+    }
+
+    /**
+     * When set, the requests are logged to the given in-memory log instead of the request log of the
+     * configuration, which is not installed, so that requests do not go to the disk or the console.
+     */
+    public void setRequestLog(InMemoryRequestLog requestLog) {
+        this.requestLog = requestLog;
+    }
+
+    /**
+     * When set, the bytes allocated and the CPU time spent by every request are added up per resource method
+     * in the given accounting, see {@link RequestAccounting}.
+     */
+    public void setRequestAccounting(RequestAccounting requestAccounting) {
+        this.requestAccounting = requestAccounting;
+    }
+
+    /**
+     * When set, the requests and responses are recorded to the recorder's log, see {@link TrafficRecorder}.
+     */
+    public void setTrafficRecorder(TrafficRecorder trafficRecorder) {
+        this.trafficRecorder = trafficRecorder;
+    }
+
+    /**
+     * When set, a stop closes the connectors and waits for the requests in flight to complete, for no longer than
+     * the given timeout, instead of sleeping for the shutdown grace period of the configuration whether there are
+     * requests in flight or not. The metrics, health checks, MBeans and files are then cleaned up concurrently.
+     * Takes effect from the next start. See {@link #getDrainReport()}.
+     */
+    public void setDrainTimeout(long timeout, TimeUnit unit) {
+        checkArgument(timeout >= 0, "The drain timeout must not be negative");
+        this.drainTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * @return how the requests in flight fared on the last stop, empty unless a drain timeout is set
+     */
+    public DrainReport getDrainReport() {
+        return drainReport;
+    }
+
+    /**
+     * When set, the thread pools, acceptors and buffers of the server are shrunk as given by the profile instead
+     * of sized as configured, see {@link #getEffectiveProfile()}.
+     */
+    public void setLeanProfile(LeanProfile leanProfile) {
+        this.leanProfile = leanProfile;
+    }
+
+    /**
+     * @return the thread pool sizes, acceptors, selectors and buffer sizes of the last started server, see
+     * {@link LeanProfile}
+     */
+    public Map<String, Object> getEffectiveProfile() {
+        return effectiveProfile;
+    }
+
     @Override
     protected void run(Environment environment, Namespace namespace, T configuration) throws Exception {
         this.startUpEnvironment = new EnvironmentFriend(environment); // remember the startup environment to enable full shutdown
+        this.configuration = configuration;
+        this.namespace = namespace;
+        this.httpConfiguration = configuration.getHttpConfiguration();
+        if (resettable != null) {
+            environment.addTask(new ResetTask());
+        }
+        if (requestAccounting != null) {
+            requestAccounting.install(environment);
+        }
+        if (trafficRecorder != null) {
+            trafficRecorder.install(environment);
+        }
 
-        this.server = new ServerFactory(configuration.getHttpConfiguration(),
-                environment.getName()).buildServer(environment);
+        if (useEphemeralPorts) {
+            // on a warm restart rebind to the same ports, so that clients created earlier keep working
+            httpConfiguration.setPort(retainedPort);
+            httpConfiguration.setAdminPort(retainedAdminPort);
+        }
+
+        final long buildStart = System.nanoTime();
+        this.server = new ServerFactory(httpConfiguration, environment.getName()).buildServer(environment);
+        acquireHealthChecks();
+
+        if (retainedThreadPool != null) {
+            server.setThreadPool(retainedThreadPool); // already started, so not managed by the new server
+            retainedThreadPool = null;
+        }
+
+        if (leanProfile != null) {
+            leanProfile.applyTo(server, ADMIN_CONNECTOR_NAME);
+        }
+
+        if (requestLog != null) {
+            captureRequests();
+        }
+
+        if (drainTimeoutNanos >= 0) {
+            countRequests();
+        }
+
+        if (useInProcessTransport) {
+            final LocalConnector connector = new LocalConnector();
+            connector.setName(MAIN_CONNECTOR_NAME); // the service handlers only accept requests from "main"
+            server.addConnector(connector);
+            this.localConnector = connector;
+        }
+        timeline.record(LifecycleTimeline.BUILD_SERVER, buildStart);
 
         try {
+            final long serverStart = System.nanoTime();
             server.start();
+            timeline.record(LifecycleTimeline.SERVER_START, serverStart);
+            effectiveProfile = LeanProfile.describe(server);
+            if (leanProfile != null) {
+                logger.info("Lean profile applied: {}", effectiveProfile);
+            }
+            final long listenersStart = System.nanoTime();
             for (ServerLifecycleListener listener : environment.getServerListeners()) {
                 listener.serverStarted(server);
             }
+            timeline.record(LifecycleTimeline.SERVER_LISTENERS, listenersStart);
         } catch (Exception e) {
             logger.error("Unable to start server, shutting down", e);
             server.stop();
+            throw e; // unlike dropwizard, which exits the JVM instead
         }
     }
 
+    /**
+     * Runs the service with a ready made configuration object instead of one parsed from the file given on
+     * the command line. Mirrors what {@link #run(Bootstrap, Namespace)} does after parsing the configuration.
+     */
+    /* package */ void runWith(Bootstrap<T> bootstrap, T configuration) throws Exception {
+        checkState(!isRunning(), "The server is already running");
+        configureLogging(configuration, bootstrap.getName());
+        this.configuration = configuration;
+        this.namespace = new Namespace(ImmutableMap.<String, Object>of());
+        rerun(bootstrap);
+    }
+
+    // logback's LoggerContext is not safe for concurrent resets, as when several servers are started in parallel
+    private static synchronized void configureLogging(Configuration configuration, String name) {
+        new LoggingFactory(configuration.getLoggingConfiguration(), name).configure();
+    }
+
+    /**
+     * Runs the service again with the configuration parsed by the last {@link #run(Bootstrap, Namespace)},
+     * i.e., skipping the command line and configuration parsing, the logging set up and
+     * {@link Service#initialize(Bootstrap)}. The configuration object is reused as is.
+     */
+    /* package */ void rerun(Bootstrap<T> bootstrap) throws Exception {
+        checkState(configuration != null, "The server has never been run");
+        checkState(!isRunning(), "The server is already running");
+        final Environment environment = new Environment(bootstrap.getName(),
+                configuration,
+                bootstrap.getObjectMapperFactory().copy(),
+                new Validator());
+        bootstrap.runWithBundles(configuration, environment);
+        service.run(configuration, environment);
+        run(environment, namespace, configuration);
+    }
+
     public boolean isRunning() {
-        return server.isRunning();
+        return server != null && server.isRunning();
+    }
+
+    /**
+     * @return the phases of the last start of the service and of the following stop
+     */
+    public LifecycleTimeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * @return the URI of the application connector, with the port the server is actually bound to
+     */
+    public URI getBaseUri() {
+        return getUri(MAIN_CONNECTOR_NAME, "/");
+    }
+
+    /**
+     * @return the URI of the admin servlet, with the port the server is actually bound to
+     */
+    public URI getAdminUri() {
+        if (httpConfiguration.getAdminPort() != 0 && httpConfiguration.getAdminPort() == httpConfiguration.getPort()) {
+            return getUri(MAIN_CONNECTOR_NAME, "/admin/");
+        }
+        return getUri(ADMIN_CONNECTOR_NAME, "/");
+    }
+
+    /**
+     * @return the in-memory connector serving the service, or null if the in-process transport is not used
+     */
+    public LocalConnector getLocalConnector() {
+        return localConnector;
+    }
+
+    /**
+     * @return why the server is not ready to serve requests, i.e., the connectors which are not open and the
+     * health checks of the service which fail, with their messages; empty if it is ready
+     */
+    /* package */ List<String> getReadinessFailures() {
+        final List<String> failures = Lists.newArrayList();
+        final Server current = server;
+        if (current == null || !current.isStarted()) {
+            failures.add("the server is not started");
+            return failures;
+        }
+        for (Connector connector : current.getConnectors()) {
+            if (!(connector instanceof LocalConnector) && connector.getLocalPort() <= 0) {
+                failures.add("connector " + connector.getName() + " is not open");
+            }
+        }
+        for (HealthCheck healthCheck : startUpEnvironment.getHealthChecks()) {
+            final HealthCheck.Result result = healthCheck.execute();
+            if (!result.isHealthy()) {
+                final String message = result.getMessage() != null || result.getError() == null
+                        ? result.getMessage() : result.getError().toString();
+                failures.add("health check " + healthCheck.getName() + " failed: " + message);
+            }
+        }
+        return failures;
+    }
+
+    public boolean isResettable() {
+        return resettable != null;
+    }
+
+    /**
+     * Resets the state of the running service, see {@link Resettable}.
+     * @return how long the reset took, in nanoseconds
+     */
+    public long reset() throws Exception {
+        checkState(resettable != null, "The service does not implement " + Resettable.class.getSimpleName());
+        checkState(isRunning(), "The server is not running");
+        final long start = System.nanoTime();
+        resettable.reset();
+        final long duration = System.nanoTime() - start;
+        timeline.record(LifecycleTimeline.RESET, start);
+        return duration;
+    }
+
+    /**
+     * @return the in-memory request log, or null if the requests are logged as configured
+     */
+    public InMemoryRequestLog getRequestLog() {
+        return requestLog;
+    }
+
+    /**
+     * @return the accounting of the requests, or null if they are not accounted for
+     */
+    public RequestAccounting getRequestAccounting() {
+        return requestAccounting;
+    }
+
+    /**
+     * @return the recorder of the traffic, or null if it is not recorded
+     */
+    public TrafficRecorder getTrafficRecorder() {
+        return trafficRecorder;
+    }
+
+    private void captureRequests() {
+        if (server.getHandler() instanceof HandlerCollection) {
+            final HandlerCollection handlers = (HandlerCollection) server.getHandler();
+            for (Handler handler : handlers.getHandlers()) {
+                if (handler instanceof RequestLogHandler) {
+                    handlers.removeHandler(handler);
+                }
+            }
+        }
+        server.setHandler(requestLog.wrap(server.getHandler()));
+    }
+
+    // outermost, so that requests arriving during the drain are turned away before anything else sees them
+    private void countRequests() {
+        final DrainingHandler handler = new DrainingHandler();
+        handler.setHandler(server.getHandler());
+        server.setHandler(handler);
+        this.statistics = handler;
+    }
+
+    private URI getUri(String connectorName, String path) {
+        checkState(isRunning(), "The server is not running");
+        for (Connector connector : server.getConnectors()) {
+            if (connectorName.equals(connector.getName()) && connector.getLocalPort() > 0) {
+                final String scheme = connector instanceof SslConnector ? "https" : "http";
+                final String host = httpConfiguration.getBindHost().or("localhost");
+                return URI.create(scheme + "://" + host + ":" + connector.getLocalPort() + path);
+            }
+        }
+        throw new IllegalStateException("No open connector named " + connectorName);
     }
 
     public void stop() throws Exception {
+        stop(false, null);
+    }
+
+    /**
+     * @param retainForRestart if true the thread pool is kept running and the ephemeral ports are remembered,
+     *                         so that they are reused by the next {@link #rerun(Bootstrap)}
+     * @param fileCleanup      removes the files staged for the service once Jetty is stopped, may be null
+     */
+    /* package */ void stop(final boolean retainForRestart, Callable<?> fileCleanup) throws Exception {
+        final boolean draining = drainTimeoutNanos >= 0;
         try {
+            if (retainForRestart) {
+                retainForRestart();
+            } else {
+                // the next start is a fresh one, bound to whatever ports are free then
+                retainedPort = 0;
+                retainedAdminPort = 0;
+            }
+            if (draining) {
+                final long drainStart = System.nanoTime();
+                drain();
+                timeline.record(LifecycleTimeline.DRAIN, drainStart);
+            }
+            final long stopStart = System.nanoTime();
             stopJetty();
+            if (!retainForRestart) {
+                releaseRetainedThreadPool();
+            }
+            timeline.record(LifecycleTimeline.STOP_JETTY, stopStart);
         } finally {
-            unRegisterHealthChecks();
-            unRegisterLoggingMBean();
+            final List<Callable<Void>> cleanups = Lists.newArrayList();
+            cleanups.add(timed(LifecycleTimeline.UNREGISTER_HEALTH_CHECKS, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    unRegisterHealthChecks();
+                    return null;
+                }
+            }));
+            cleanups.add(timed(LifecycleTimeline.UNREGISTER_METRICS, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    unRegisterMetrics(!retainForRestart);
+                    return null;
+                }
+            }));
+            cleanups.add(timed(LifecycleTimeline.UNREGISTER_LOGGING_MBEAN, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    unRegisterLoggingMBean();
+                    return null;
+                }
+            }));
+            if (fileCleanup != null) {
+                cleanups.add(timed(LifecycleTimeline.CLEAN_UP_FILES, fileCleanup));
+            }
+            if (draining) {
+                runConcurrently(cleanups);
+            } else {
+                runInSequence(cleanups);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections, answers further requests on open connections with a 503 and waits for the
+     * requests in flight to complete, up to the drain timeout.
+     */
+    private void drain() throws Exception {
+        if (server == null || !server.isRunning() || statistics == null) {
+            drainReport = DrainReport.empty();
+            return;
+        }
+        final long start = System.nanoTime();
+        for (Connector connector : server.getConnectors()) {
+            connector.close();
+        }
+        statistics.startDraining();
+        final int inFlight = statistics.getRequestsActive();
+        final long deadline = start + drainTimeoutNanos;
+        while (statistics.getRequestsActive() > 0 && System.nanoTime() - deadline < 0) {
+            TimeUnit.MILLISECONDS.sleep(DRAIN_POLL_MILLIS);
+        }
+        final int cutOff = Math.min(inFlight, statistics.getRequestsActive());
+        drainReport = new DrainReport(inFlight, Math.max(0, inFlight - cutOff), statistics.getRejected(), cutOff,
+                System.nanoTime() - start);
+        server.setGracefulShutdown(0); // drained already, Jetty would sleep for the whole grace period otherwise
+        if (cutOff > 0) {
+            logger.warn("{} stopped with requests in flight: {}", timeline.getServiceName(), drainReport);
+        }
+    }
+
+    private <V> Callable<Void> timed(final String phase, final Callable<V> step) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final long start = System.nanoTime();
+                step.call();
+                timeline.record(phase, start);
+                return null;
+            }
+        };
+    }
+
+    private static void runConcurrently(List<Callable<Void>> steps) throws Exception {
+        Throwable failure = null;
+        for (Future<Void> result : STOP_CLEANUP.invokeAll(steps)) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                } else {
+                    logger.warn("Unable to clean up after the server", e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            Throwables.propagateIfPossible(failure, Exception.class);
+            throw Throwables.propagate(failure);
+        }
+    }
+
+    /**
+     * Runs every step, also after one failed, and rethrows the first failure as {@link #runConcurrently(List)} does.
+     */
+    private static void runInSequence(List<Callable<Void>> steps) throws Exception {
+        Exception failure = null;
+        for (Callable<Void> step : steps) {
+            try {
+                step.call();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    logger.warn("Unable to clean up after the server", e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void retainForRestart() {
+        if (server == null) {
+            return;
+        }
+        if (useEphemeralPorts && isRunning()) {
+            retainedPort = getBaseUri().getPort();
+            retainedAdminPort = getAdminUri().getPort();
+        }
+        retainedThreadPool = server.getThreadPool();
+        server.removeBean(retainedThreadPool); // keeps the pool running when the server stops
+    }
+
+    /**
+     * @return what the last stop left behind in the JVM
+     */
+    public LeakReport getLeakReport() {
+        return leakReport;
+    }
+
+    /**
+     * Registers the logging MBean and starts tracking the metrics and MBeans registered from now on, which are
+     * removed again on {@link #stop()}. Called before every start.
+     */
+    /* package */ void acquireRegistrations() throws Exception {
+        SharedRegistrations.acquireLoggingMBean();
+        registrations.start();
+    }
+
+    private void unRegisterMetrics(boolean checkThreads) throws Exception {
+        leakReport = registrations.stop(checkThreads);
+        if (!leakReport.isClean()) {
+            logger.warn("{} left behind {}", timeline.getServiceName(), leakReport);
         }
     }
 
     private void unRegisterLoggingMBean() throws Exception {
-        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
-        ObjectName loggerObjectName = new ObjectName("com.yammer:type=Logging");
-        if (server.isRegistered(loggerObjectName)) {
-            server.unregisterMBean(loggerObjectName);
+        SharedRegistrations.releaseLoggingMBean();
+    }
+
+    private void acquireHealthChecks() {
+        acquiredHealthChecks.add(DEADLOCK_HEALTH_CHECK_NAME);
+        for (HealthCheck healthCheck : startUpEnvironment.getHealthChecks()) {
+            acquiredHealthChecks.add(healthCheck.getName());
+        }
+        for (String name : acquiredHealthChecks) {
+            SharedRegistrations.acquire(healthCheckKey(name));
         }
     }
 
+    // health checks are registered by name, only the last of the servers sharing a name removes it
     private void unRegisterHealthChecks() {
-        for (HealthCheck healthCheck : startUpEnvironment.getHealthChecks()) {
-            HealthChecks.defaultRegistry().unregister(healthCheck);
+        for (String name : acquiredHealthChecks) {
+            if (SharedRegistrations.release(healthCheckKey(name))) {
+                HealthChecks.defaultRegistry().unregister(name);
+            }
         }
+        acquiredHealthChecks.clear();
+    }
+
+    private static String healthCheckKey(String name) {
+        return "healthcheck:" + name;
+    }
+
+    private void releaseRetainedThreadPool() throws Exception {
+        if (retainedThreadPool instanceof LifeCycle) {
+            ((LifeCycle) retainedThreadPool).stop();
+        }
+        retainedThreadPool = null;
     }
 
     private void stopJetty() throws Exception {
         if (server != null) {
+            final ThreadPool threadPool = server.getThreadPool();
             server.stop();
             checkArgument(server.isStopped());
+            // a pool reused from a previous run is not managed by the server
+            if (threadPool != retainedThreadPool && threadPool instanceof LifeCycle && ((LifeCycle) threadPool).isRunning()) {
+                ((LifeCycle) threadPool).stop();
+            }
         }
     }
 
+    /**
+     * Counts the requests in flight and, once draining, answers the new ones with a 503 rather than passing them on.
+     * Dispatches of suspended requests, e.g. long polls being resumed, are still passed on.
+     */
+    private static final class DrainingHandler extends StatisticsHandler {
+        private final AtomicInteger rejected = new AtomicInteger();
+        private volatile boolean draining = false;
+
+        private void startDraining() {
+            draining = true;
+        }
+
+        private int getRejected() {
+            return rejected.get();
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                throws IOException, ServletException {
+            if (draining && baseRequest.getAsyncContinuation().isInitial()) {
+                rejected.incrementAndGet();
+                baseRequest.setHandled(true);
+                response.setHeader("Connection", "close");
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+            super.handle(target, baseRequest, request, response);
+        }
+    }
+
+    /**
+     * Exposes {@link #reset()} on the admin servlet, as {@code POST /tasks/reset}.
+     */
+    private final class ResetTask extends Task {
+        private ResetTask() {
+            super(RESET_TASK_NAME);
+        }
+
+        @Override
+        public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+            output.printf("Reset in %.3f ms%n", reset() / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Wraps the service passed to {@link EnvironmentCommand}, which calls {@link Service#run(Configuration, Environment)}
+     * itself, to time it and the configuration phase that precedes it.
+     */
+    private static final class TimedService<T extends Configuration> extends ServiceWrapper<T> {
+        private final Service<T> delegate;
+        private final LifecycleTimeline timeline;
 
+        private TimedService(Service<T> delegate) {
+            this.delegate = delegate;
+            this.timeline = new LifecycleTimeline(delegate.getClass().getSimpleName());
+        }
+
+        @Override
+        public void run(T configuration, Environment environment) throws Exception {
+            timeline.recordSinceMark(LifecycleTimeline.CONFIGURATION);
+            final long start = System.nanoTime();
+            super.run(configuration, environment);
+            timeline.record(LifecycleTimeline.SERVICE_RUN, start);
+        }
+
+        @Override
+        protected Service<T> getDelegate() {
+            return delegate;
+        }
+    }
 }
@@ -21,6 +21,11 @@ import com.yammer.dropwizard.cli.Cli;
 import com.yammer.dropwizard.config.Bootstrap;
 import com.yammer.dropwizard.config.Configuration;
 
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static com.google.common.base.Preconditions.checkState;
+
 /**
  * A wrapper around a service that exposes the {@link LifecycleServerCommand} and through it
  * allows for the management of the services lifecycle, i.e., shutting it down.
@@ -32,6 +37,7 @@ import com.yammer.dropwizard.config.Configuration;
 public class LifecycleService<T extends Configuration, S extends Service<T>> {
     private final S serviceUnderTest;
     private final LifecycleServerCommand<T> testServerCommand;
+    private Bootstrap<T> bootstrap;
 
     /**
      * Take a newly created instance of the a {@link com.yammer.dropwizard.Service}. It is important that
@@ -40,7 +46,19 @@ public class LifecycleService<T extends Configuration, S extends Service<T>> {
      */
     public LifecycleService(S serviceUnderTest) {
         this.serviceUnderTest = serviceUnderTest;
-        this.testServerCommand = new LifecycleServerCommand(serviceUnderTest, serviceUnderTest.getConfigurationClass());
+        this.testServerCommand = new LifecycleServerCommand(serviceUnderTest, configurationClassOf(serviceUnderTest));
+    }
+
+    /**
+     * The configuration class of the innermost service, since that of a generic {@link ServiceWrapper} cannot be
+     * told from its type parameter.
+     */
+    private static <T extends Configuration> Class<T> configurationClassOf(Service<T> service) {
+        Service<T> candidate = service;
+        while (candidate instanceof ServiceWrapper) {
+            candidate = ((ServiceWrapper<T>) candidate).getDelegate();
+        }
+        return candidate.getConfigurationClass();
     }
 
     public boolean isRunning() {
@@ -51,15 +69,111 @@ public class LifecycleService<T extends Configuration, S extends Service<T>> {
         testServerCommand.stop();
     }
 
+    /**
+     * Stops the service, then has the given cleanup remove its files, alongside the removal of its registrations.
+     */
+    /* package */ void stop(Callable<?> fileCleanup) throws Exception {
+        testServerCommand.stop(false, fileCleanup);
+    }
+
     public void run(String[] arguments) throws Exception {
+        final Bootstrap<T> bootstrap = initialize();
+        testServerCommand.acquireRegistrations();
+        final Cli cli = new Cli(serviceUnderTest.getClass(), bootstrap);
+        try {
+            cli.run(arguments);
+        } catch (Exception e) {
+            testServerCommand.stop();
+            throw e;
+        }
+        this.bootstrap = bootstrap;
+    }
+
+    /**
+     * Runs the service with the given configuration, skipping the command line and the configuration file.
+     * The configuration is validated as if it had been read from a file. Note that the object is used as is,
+     * e.g., the ports are overwritten if ephemeral ports are used.
+     */
+    public void run(T configuration) throws Exception {
+        ConfigurationOverrides.validate(configuration.getClass().getSimpleName(), configuration);
+        runWith(initialize(), configuration);
+    }
+
+    /**
+     * Runs the service with the configuration from the given file, with the overrides applied on top of it.
+     * The keys are dotted paths into the configuration, e.g., {@code http.port}, as with dropwizard's
+     * {@code dw.} system properties. The parsed file is cached, so that it is not read again for every variant.
+     */
+    public void run(String configFile, Map<String, String> overrides) throws Exception {
+        final Bootstrap<T> bootstrap = initialize();
+        final T configuration = ConfigurationOverrides.build(configurationClassOf(serviceUnderTest),
+                bootstrap.getObjectMapperFactory(), configFile, overrides);
+        runWith(bootstrap, configuration);
+    }
+
+    private Bootstrap<T> initialize() {
+        final LifecycleTimeline timeline = testServerCommand.getTimeline();
+        timeline.reset();
+        final long start = System.nanoTime();
         final Bootstrap<T> bootstrap = new Bootstrap<>(serviceUnderTest);
         bootstrap.addCommand(testServerCommand);
         serviceUnderTest.initialize(bootstrap);
-        final Cli cli = new Cli(serviceUnderTest.getClass(), bootstrap);
-        cli.run(arguments);
+        timeline.record(LifecycleTimeline.INITIALIZE, start);
+        timeline.mark();
+        return bootstrap;
+    }
+
+    private void runWith(Bootstrap<T> bootstrap, T configuration) throws Exception {
+        testServerCommand.acquireRegistrations();
+        try {
+            testServerCommand.runWith(bootstrap, configuration);
+        } catch (Exception e) {
+            testServerCommand.stop();
+            throw e;
+        }
+        this.bootstrap = bootstrap;
+    }
+
+    /**
+     * @return true if the service has been run before, i.e., it can be started again with {@link #rerun()}
+     */
+    public boolean canRerun() {
+        return bootstrap != null;
+    }
+
+    /**
+     * Starts a stopped service again, reusing the bootstrap and the configuration of the last
+     * {@link #run(String[])}. Only {@link com.yammer.dropwizard.Service#run(com.yammer.dropwizard.config.Configuration,
+     * com.yammer.dropwizard.config.Environment)} and the Jetty server set up are repeated.
+     */
+    public void rerun() throws Exception {
+        checkState(canRerun(), "The service has never been run");
+        testServerCommand.getTimeline().reset();
+        testServerCommand.getTimeline().mark();
+        testServerCommand.acquireRegistrations();
+        try {
+            testServerCommand.rerun(bootstrap);
+        } catch (Exception e) {
+            testServerCommand.stop();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the running service and immediately starts it again through {@link #rerun()}, keeping the Jetty
+     * thread pool and the ephemeral ports (if used) of the stopped server.
+     */
+    public void restart() throws Exception {
+        checkState(isRunning(), "The service is not running");
+        testServerCommand.stop(true, null);
+        rerun();
     }
 
     public S getServiceUnderTest() {
         return serviceUnderTest;
     }
+
+    public LifecycleServerCommand<T> getServerCommand() {
+        return testServerCommand;
+    }
 }
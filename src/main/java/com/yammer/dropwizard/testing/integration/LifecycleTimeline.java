@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phases of the last start of a service and of the stop that followed it, in the order they happened,
+ * with nanosecond durations. Every recorded phase is also fed to the JVM wide {@link LifecycleTimings}.
+ */
+public class LifecycleTimeline {
+    public static final String INITIALIZE = "initialize";
+    /** everything between initialize and Service.run: parsing and validating the configuration, logging, bundles */
+    public static final String CONFIGURATION = "configuration";
+    public static final String SERVICE_RUN = "service.run";
+    public static final String BUILD_SERVER = "buildServer";
+    public static final String SERVER_START = "server.start";
+    public static final String SERVER_LISTENERS = "serverStarted";
+    /** a {@link Resettable#reset()} of the running service */
+    public static final String RESET = "reset";
+    /** waiting for the requests in flight on a stop, see {@link LifecycleServerCommand#setDrainTimeout(long, TimeUnit)} */
+    public static final String DRAIN = "drain";
+    public static final String STOP_JETTY = "stopJetty";
+    public static final String UNREGISTER_HEALTH_CHECKS = "unRegisterHealthChecks";
+    public static final String UNREGISTER_METRICS = "unRegisterMetrics";
+    public static final String UNREGISTER_LOGGING_MBEAN = "unRegisterLoggingMBean";
+    /** removing the staged supporting files, or the sandbox */
+    public static final String CLEAN_UP_FILES = "cleanUpFiles";
+    /* package */ static final Set<String> STARTUP_PHASES =
+            ImmutableSet.of(INITIALIZE, CONFIGURATION, SERVICE_RUN, BUILD_SERVER, SERVER_START, SERVER_LISTENERS);
+
+    private final String serviceName;
+    private final List<Phase> phases = Lists.newArrayList();
+    private long origin = System.nanoTime();
+    private long mark = 0;
+
+    /* package */ LifecycleTimeline(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    /**
+     * Starts a new timeline, dropping the phases recorded so far.
+     */
+    /* package */ synchronized void reset() {
+        phases.clear();
+        origin = System.nanoTime();
+        mark = 0;
+    }
+
+    /* package */ synchronized void mark() {
+        mark = System.nanoTime();
+    }
+
+    /* package */ synchronized void recordSinceMark(String phase) {
+        if (mark != 0) {
+            record(phase, mark);
+            mark = 0;
+        }
+    }
+
+    /**
+     * @param startNanos the {@link System#nanoTime()} at which the phase started; it ends now
+     */
+    /* package */ void record(String phase, long startNanos) {
+        final long durationNanos = System.nanoTime() - startNanos;
+        synchronized (this) {
+            phases.add(new Phase(phase, startNanos - origin, durationNanos));
+        }
+        LifecycleTimings.record(serviceName, phase, durationNanos);
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return ImmutableList.copyOf(phases);
+    }
+
+    /**
+     * @return the total time spent in the given phase, 0 if it has not been recorded
+     */
+    public synchronized long getNanos(String phase) {
+        long total = 0;
+        for (Phase recorded : phases) {
+            if (recorded.getName().equals(phase)) {
+                total += recorded.getDurationNanos();
+            }
+        }
+        return total;
+    }
+
+    public synchronized long getStartupNanos() {
+        long total = 0;
+        for (Phase recorded : phases) {
+            if (STARTUP_PHASES.contains(recorded.getName())) {
+                total += recorded.getDurationNanos();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder builder = new StringBuilder(serviceName).append(" lifecycle:");
+        for (Phase phase : phases) {
+            builder.append("\n  ").append(phase);
+        }
+        return builder.toString();
+    }
+
+    public static class Phase {
+        private final String name;
+        private final long offsetNanos;
+        private final long durationNanos;
+
+        /* package */ Phase(String name, long offsetNanos, long durationNanos) {
+            this.name = name;
+            this.offsetNanos = offsetNanos;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return when the phase started, relative to the start of the timeline
+         */
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s +%9.3f ms %9.3f ms", name,
+                    offsetNanos / (double) TimeUnit.MILLISECONDS.toNanos(1),
+                    durationNanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricName;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates the {@link LifecycleTimeline}s of all the services started in this JVM. Each phase is recorded
+ * in a Metrics timer named after the phase and scoped with the service name, and summed up per service, so that
+ * {@link #getReport(int)} can point at the slowest services and phases of a test suite.
+ */
+public final class LifecycleTimings {
+    private static final Map<String, PhaseStatistics> statistics = Maps.newHashMap();
+    private static boolean reportAtExit = false;
+
+    private LifecycleTimings() {
+    }
+
+    /* package */ static void record(String serviceName, String phase, long durationNanos) {
+        Metrics.newTimer(new MetricName(LifecycleService.class, phase, serviceName), TimeUnit.MILLISECONDS, TimeUnit.SECONDS)
+                .update(durationNanos, TimeUnit.NANOSECONDS);
+        synchronized (LifecycleTimings.class) {
+            final String key = serviceName + '\u0000' + phase;
+            PhaseStatistics phaseStatistics = statistics.get(key);
+            if (phaseStatistics == null) {
+                phaseStatistics = new PhaseStatistics(serviceName, phase);
+                statistics.put(key, phaseStatistics);
+            }
+            phaseStatistics.add(durationNanos);
+        }
+    }
+
+    /**
+     * @param limit the number of services and of phases to list
+     * @return a human readable summary of the slowest services (by total startup time) and the slowest phases
+     */
+    public static synchronized String getReport(int limit) {
+        final Map<String, Long> startupPerService = Maps.newHashMap();
+        final Map<String, Long> startsPerService = Maps.newHashMap();
+        final Map<String, PhaseStatistics> resetsPerService = Maps.newHashMap();
+        for (PhaseStatistics phaseStatistics : statistics.values()) {
+            if (LifecycleTimeline.STARTUP_PHASES.contains(phaseStatistics.phase)) {
+                final Long total = startupPerService.get(phaseStatistics.serviceName);
+                startupPerService.put(phaseStatistics.serviceName, (total == null ? 0 : total) + phaseStatistics.totalNanos);
+            }
+            if (LifecycleTimeline.SERVICE_RUN.equals(phaseStatistics.phase)) {
+                startsPerService.put(phaseStatistics.serviceName, phaseStatistics.count);
+            }
+            if (LifecycleTimeline.RESET.equals(phaseStatistics.phase)) {
+                resetsPerService.put(phaseStatistics.serviceName, phaseStatistics);
+            }
+        }
+        final List<Map.Entry<String, Long>> services = Lists.newArrayList(startupPerService.entrySet());
+        Collections.sort(services, new Ordering<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> left, Map.Entry<String, Long> right) {
+                return Long.compare(right.getValue(), left.getValue());
+            }
+        });
+        final List<PhaseStatistics> phases = Ordering.natural().greatestOf(statistics.values(), limit);
+
+        final StringBuilder report = new StringBuilder("Test server lifecycle timings\n");
+        report.append("Slowest services (total startup time):\n");
+        for (Map.Entry<String, Long> service : services.subList(0, Math.min(limit, services.size()))) {
+            final Long starts = startsPerService.get(service.getKey());
+            report.append(String.format("  %-40s %10.1f ms in %d starts", service.getKey(), millis(service.getValue()),
+                    starts == null ? 0 : starts));
+            final PhaseStatistics resets = resetsPerService.get(service.getKey());
+            if (resets != null && starts != null && starts > 0) {
+                report.append(String.format(", %d resets at %.1f ms vs %.1f ms per start", resets.count,
+                        millis(resets.totalNanos) / resets.count, millis(service.getValue()) / starts));
+            }
+            report.append(String.format("%n"));
+        }
+        report.append("Slowest phases (total time):\n");
+        for (PhaseStatistics phase : phases) {
+            report.append("  ").append(phase).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Prints the {@link #getReport(int) report} to standard error when the JVM exits, e.g., at the end of a
+     * forked test run.
+     */
+    public static synchronized void printReportAtExit(final int limit) {
+        if (!reportAtExit) {
+            Runtime.getRuntime().addShutdownHook(new Thread("lifecycle-timings-report") {
+                @Override
+                public void run() {
+                    System.err.print(getReport(limit));
+                }
+            });
+            reportAtExit = true;
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static final class PhaseStatistics implements Comparable<PhaseStatistics> {
+        private final String serviceName;
+        private final String phase;
+        private long count = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+
+        private PhaseStatistics(String serviceName, String phase) {
+            this.serviceName = serviceName;
+            this.phase = phase;
+        }
+
+        private void add(long durationNanos) {
+            count++;
+            totalNanos += durationNanos;
+            maxNanos = Math.max(maxNanos, durationNanos);
+        }
+
+        @Override
+        public int compareTo(PhaseStatistics other) {
+            return Long.compare(totalNanos, other.totalNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %-24s %10.1f ms total %8.1f ms mean %8.1f ms max (%d)", serviceName, phase,
+                    millis(totalNanos), millis(totalNanos) / count, millis(maxNanos), count);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Drives load against a service, typically one started by a {@link TestServer}, and records the latencies in
+ * an HdrHistogram, so that performance tests can assert on throughput and tail latency:
+ * <pre>
+ * LoadResult result = LoadDriver.forGet(testServer, "/").openLoop(2000, 10, TimeUnit.SECONDS, 16);
+ * assertThat(result.getP99(TimeUnit.MILLISECONDS) &lt; 5, is(true));
+ * </pre>
+ * A request fails if the callable throws; the latencies of failed requests are not recorded.
+ */
+public class LoadDriver {
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private final Callable<?> request;
+    private long warmupNanos = 0;
+
+    private LoadDriver(Callable<?> request) {
+        this.request = checkNotNull(request);
+    }
+
+    public static LoadDriver forRequest(Callable<?> request) {
+        return new LoadDriver(request);
+    }
+
+    /**
+     * Issues GET requests to the given path of the server, in memory if the server uses the in-process
+     * transport. The server must already be started; its shared clients are used, so the driver lasts until the
+     * server stops. Responses with a status of 500 or above count as failures.
+     */
+    public static LoadDriver forGet(TestServer<?, ?> server, String path) {
+        final boolean inProcess = server.hasInProcessTransport();
+        final Client client = inProcess ? server.getInProcessClient() : server.getClient();
+        final URI base = inProcess ? URI.create("http://in-process/") : server.getBaseUri();
+        final WebResource resource = client.resource(base.resolve(path));
+        return new LoadDriver(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                final ClientResponse response = resource.get(ClientResponse.class);
+                try {
+                    response.bufferEntity();
+                    if (response.getStatus() >= 500) {
+                        throw new IllegalStateException("Request failed with status " + response.getStatus());
+                    }
+                    return response.getStatus();
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the request for the given time before every scenario, without recording the results, to let the
+     * JIT and the server's caches and pools warm up.
+     * @return this driver
+     */
+    public LoadDriver withWarmup(long duration, TimeUnit unit) {
+        checkArgument(duration >= 0);
+        this.warmupNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Each of the workers issues the next request as soon as the previous one has completed.
+     */
+    public LoadResult closedLoop(int workers, long duration, TimeUnit unit) throws Exception {
+        checkArgument(workers > 0, "At least one worker is needed");
+        if (warmupNanos > 0) {
+            run(workers, warmupNanos, null);
+        }
+        return run(workers, unit.toNanos(duration), null);
+    }
+
+    /**
+     * Requests are issued at a fixed rate, independently of how fast the server responds, by up to the given
+     * number of workers. The latency of a request is measured from the time it was scheduled to be issued, not
+     * from the time a worker got round to issuing it, so that a stalled server is not hidden by the requests
+     * that were never sent while it stalled (coordinated omission).
+     */
+    public LoadResult openLoop(double requestsPerSecond, long duration, TimeUnit unit, int workers) throws Exception {
+        checkArgument(requestsPerSecond > 0, "The rate must be positive");
+        checkArgument(workers > 0, "At least one worker is needed");
+        final long intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+        if (warmupNanos > 0) {
+            run(workers, warmupNanos, intervalNanos);
+        }
+        return run(workers, unit.toNanos(duration), intervalNanos);
+    }
+
+    private LoadResult run(int workers, long durationNanos, final Long intervalNanos) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(workers,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("load-driver-%d").build());
+        final AtomicLong sequence = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicReference<Throwable> firstError = new AtomicReference<>();
+        final long start = System.nanoTime();
+        final long deadline = start + durationNanos;
+        try {
+            final List<Future<Histogram>> results = Lists.newArrayList();
+            for (int i = 0; i < workers; i++) {
+                results.add(executor.submit(new Callable<Histogram>() {
+                    @Override
+                    public Histogram call() {
+                        final Histogram histogram = new Histogram(SIGNIFICANT_DIGITS);
+                        while (true) {
+                            final long scheduled;
+                            if (intervalNanos == null) {
+                                scheduled = System.nanoTime();
+                            } else {
+                                scheduled = start + sequence.getAndIncrement() * intervalNanos;
+                                waitUntil(scheduled);
+                            }
+                            if (scheduled >= deadline || Thread.currentThread().isInterrupted()) {
+                                return histogram;
+                            }
+                            try {
+                                request.call();
+                                histogram.recordValue(System.nanoTime() - scheduled);
+                            } catch (Exception e) {
+                                errors.incrementAndGet();
+                                firstError.compareAndSet(null, e);
+                            }
+                        }
+                    }
+                }));
+            }
+            final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+            for (Future<Histogram> result : results) {
+                total.add(result.get());
+            }
+            return new LoadResult(total, errors.get(), System.nanoTime() - start, Optional.fromNullable(firstError.get()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /* package */ static void waitUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Optional;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a {@link LoadDriver} run: the latency histogram of the successful requests (recorded in
+ * nanoseconds), the number of failed ones and the achieved throughput.
+ */
+public class LoadResult {
+    private final Histogram latencies;
+    private final long errors;
+    private final long elapsedNanos;
+    private final Optional<Throwable> firstError;
+
+    /* package */ LoadResult(Histogram latencies, long errors, long elapsedNanos, Optional<Throwable> firstError) {
+        this.latencies = latencies;
+        this.errors = errors;
+        this.elapsedNanos = elapsedNanos;
+        this.firstError = firstError;
+    }
+
+    /**
+     * @return a copy of the latency histogram, in nanoseconds
+     */
+    public Histogram getHistogram() {
+        return latencies.copy();
+    }
+
+    public long getRequestCount() {
+        return latencies.getTotalCount();
+    }
+
+    public long getErrorCount() {
+        return errors;
+    }
+
+    public Optional<Throwable> getFirstError() {
+        return firstError;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the successful requests per second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : latencies.getTotalCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * @param percentile e.g. 99.9
+     */
+    public double getLatency(double percentile, TimeUnit unit) {
+        return toUnit(latencies.getValueAtPercentile(percentile), unit);
+    }
+
+    public double getP50(TimeUnit unit) {
+        return getLatency(50, unit);
+    }
+
+    public double getP99(TimeUnit unit) {
+        return getLatency(99, unit);
+    }
+
+    public double getP999(TimeUnit unit) {
+        return getLatency(99.9, unit);
+    }
+
+    public double getMax(TimeUnit unit) {
+        return toUnit(latencies.getMaxValue(), unit);
+    }
+
+    public double getMean(TimeUnit unit) {
+        return latencies.getTotalCount() == 0 ? 0 : latencies.getMean() / TimeUnit.NANOSECONDS.convert(1, unit);
+    }
+
+    private static double toUnit(long nanos, TimeUnit unit) {
+        return nanos / (double) TimeUnit.NANOSECONDS.convert(1, unit);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests (%d errors) in %d ms, %.1f req/s, latency ms p50=%.3f p99=%.3f p999=%.3f max=%.3f",
+                getRequestCount(), errors, getElapsed(TimeUnit.MILLISECONDS), getThroughput(),
+                getP50(TimeUnit.MILLISECONDS), getP99(TimeUnit.MILLISECONDS), getP999(TimeUnit.MILLISECONDS),
+                getMax(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.Lists;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.client.apache4.ApacheHttpClient4;
+import com.sun.jersey.client.apache4.ApacheHttpClient4Handler;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The Jersey clients handed out by a {@link TestServer}: backed by Apache HttpClient with a pool of keep-alive
+ * connections, so that a suite issuing many requests reuses its connections instead of leaving a socket in
+ * TIME_WAIT behind each request. The clients are shut down, connections included, when the server stops.
+ */
+/* package */ final class PooledClients {
+    /** connections are opened on demand, so a generous limit costs nothing until the load needs it */
+    /* package */ static final int DEFAULT_MAX_CONNECTIONS = 256;
+    private final List<PoolingClientConnectionManager> connectionManagers = Lists.newArrayList();
+
+    /**
+     * @param maxConnections the size of the connection pool, i.e., the number of requests in flight at a time
+     */
+    /* package */ synchronized Client create(ClientConfig clientConfig, int maxConnections) {
+        checkArgument(maxConnections > 0, "The client needs at least one connection");
+        final PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManagers.add(connectionManager);
+        final ApacheHttpClient4Handler handler =
+                new ApacheHttpClient4Handler(new DefaultHttpClient(connectionManager), null, false);
+        return new ApacheHttpClient4(handler, clientConfig);
+    }
+
+    /**
+     * Drops the idle connections, e.g. those to a server which has been restarted.
+     */
+    /* package */ synchronized void closeIdleConnections() {
+        for (PoolingClientConnectionManager connectionManager : connectionManagers) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Shuts down all the clients created so far.
+     */
+    /* package */ synchronized void closeAll() {
+        for (PoolingClientConnectionManager connectionManager : connectionManagers) {
+            connectionManager.shutdown();
+        }
+        connectionManagers.clear();
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableListMultimap;
+
+import java.util.Arrays;
+
+/**
+ * A request and its response as recorded by a {@link TrafficRecorder}, see {@link TrafficLog}.
+ */
+public class RecordedExchange {
+    private final long offsetNanos;
+    private final long latencyNanos;
+    private final String method;
+    private final String uri;
+    private final ImmutableListMultimap<String, String> requestHeaders;
+    private final byte[] requestBody;
+    private final int status;
+    private final String contentType;
+    private final byte[] responseBody;
+
+    /* package */ RecordedExchange(long offsetNanos, long latencyNanos, String method, String uri,
+                                   ImmutableListMultimap<String, String> requestHeaders, byte[] requestBody, int status,
+                                   String contentType, byte[] responseBody) {
+        this.offsetNanos = offsetNanos;
+        this.latencyNanos = latencyNanos;
+        this.method = method;
+        this.uri = uri;
+        this.requestHeaders = requestHeaders;
+        this.requestBody = requestBody;
+        this.status = status;
+        this.contentType = contentType;
+        this.responseBody = responseBody;
+    }
+
+    /**
+     * @return when the request was received, in nanoseconds since the recorder was created
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    /**
+     * @return how long the server took to serve the request, in nanoseconds
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the path and the query string, e.g. {@code /users?name=x}
+     */
+    public String getUri() {
+        return uri;
+    }
+
+    public ImmutableListMultimap<String, String> getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    /**
+     * @return the bytes of the request body read by the service
+     */
+    public byte[] getRequestBody() {
+        return Arrays.copyOf(requestBody, requestBody.length);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the content type of the response, or null if it had none
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    public byte[] getResponseBody() {
+        return Arrays.copyOf(responseBody, responseBody.length);
+    }
+
+    /* package */ byte[] requestBody() {
+        return requestBody;
+    }
+
+    /* package */ byte[] responseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + uri + " -> " + status + " (" + responseBody.length + " bytes)";
+    }
+}
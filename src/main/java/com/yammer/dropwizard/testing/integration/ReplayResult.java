@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a {@link TrafficReplayer} run: the recorded and the replayed latencies and throughput, and
+ * the responses which differed from the recorded ones. The recorded latencies were measured by the server and
+ * the replayed ones by the client, so the latter include the network.
+ */
+public class ReplayResult {
+    private final LoadResult recorded;
+    private final LoadResult replayed;
+    private final long mismatchCount;
+    private final List<String> mismatches;
+
+    /* package */ ReplayResult(LoadResult recorded, LoadResult replayed, long mismatchCount, List<String> mismatches) {
+        this.recorded = recorded;
+        this.replayed = replayed;
+        this.mismatchCount = mismatchCount;
+        this.mismatches = mismatches;
+    }
+
+    /**
+     * @return the latencies of the recorded exchanges and their throughput over the recorded span
+     */
+    public LoadResult getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * @return the latencies of the replayed requests, and the requests which failed altogether
+     */
+    public LoadResult getReplayed() {
+        return replayed;
+    }
+
+    public long getMismatchCount() {
+        return mismatchCount;
+    }
+
+    /**
+     * @return a description of each of the first mismatching responses, e.g.
+     * {@code GET /users: recorded 200 with 312 bytes, replayed 500 with 20 bytes}
+     */
+    public List<String> getMismatches() {
+        return mismatches;
+    }
+
+    /**
+     * @param percentile e.g. 99
+     * @return the replayed latency at the percentile over the recorded one, e.g. 1.5 for 50% slower
+     */
+    public double getLatencyRatio(double percentile) {
+        final double recordedLatency = recorded.getLatency(percentile, TimeUnit.NANOSECONDS);
+        return recordedLatency == 0 ? 0 : replayed.getLatency(percentile, TimeUnit.NANOSECONDS) / recordedLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("recorded: %s%nreplayed: %s%n%d mismatches", recorded, replayed, mismatchCount);
+    }
+}
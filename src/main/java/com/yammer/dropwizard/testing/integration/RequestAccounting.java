@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.sun.jersey.api.model.AbstractMethod;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.api.model.AbstractSubResourceMethod;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ResourceFilter;
+import com.sun.jersey.spi.container.ResourceFilterFactory;
+import com.yammer.dropwizard.config.Environment;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Measures the bytes allocated and the CPU time spent by the thread serving each request, from the per-thread
+ * counters of the JVM, and adds them up per resource method, e.g. {@code GET /users/{id}}, so that tests can
+ * assert budgets:
+ * <pre>
+ * assertThat(accounting.getCost("GET /").getMeanAllocatedBytes() &lt; 20 * 1024, is(true));
+ * </pre>
+ * Work done on other threads, e.g. by an executor the resource hands off to, is not counted. Requests which do
+ * not reach a resource method are counted under their HTTP method, e.g. {@code POST (unmatched)}.
+ *
+ * A request is counted once its thread is done with it, which may be after the client has read the response,
+ * so the queries first wait up to {@link #SETTLE_TIMEOUT_MILLIS} for the requests in flight to be counted.
+ */
+public class RequestAccounting implements Filter {
+    public static final long SETTLE_TIMEOUT_MILLIS = 1000;
+    /* package */ static final String UNMATCHED = "(unmatched)";
+    private final com.sun.management.ThreadMXBean threads;
+    private final ThreadLocal<String> resourceMethod = new ThreadLocal<>();
+    private final ConcurrentMap<String, Totals> totals = Maps.newConcurrentMap();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong counted = new AtomicLong();
+
+    /**
+     * @throws IllegalStateException if the JVM does not count the allocations and the CPU time of its threads
+     */
+    public RequestAccounting() {
+        checkState(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "The JVM does not count the allocations of its threads");
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        checkState(threads.isThreadAllocatedMemorySupported() && threads.isCurrentThreadCpuTimeSupported(),
+                "The JVM does not count the allocations and the CPU time of its threads");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        threads.setThreadCpuTimeEnabled(true);
+    }
+
+    /**
+     * Installs the filter in front of the service servlet, and the Jersey filter which tells it the resource
+     * method, into an environment which is not running yet.
+     */
+    /* package */ void install(Environment environment) {
+        environment.addFilter(this, "/*");
+        @SuppressWarnings("unchecked") // Jersey 1 declares the list raw; it holds ResourceFilterFactory instances
+        final List<ResourceFilterFactory> filterFactories =
+                environment.getJerseyResourceConfig().getResourceFilterFactories();
+        filterFactories.add(new ResourceMethodFilterFactory());
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        final long threadId = Thread.currentThread().getId();
+        final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        final long cpuBefore = threads.getCurrentThreadCpuTime();
+        resourceMethod.remove();
+        started.incrementAndGet();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            final long cpuNanos = threads.getCurrentThreadCpuTime() - cpuBefore;
+            final long allocatedBytes = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            final String matched = resourceMethod.get();
+            resourceMethod.remove();
+            final String method = ((HttpServletRequest) request).getMethod();
+            totalsOf(matched != null ? matched : method + " " + UNMATCHED).add(allocatedBytes, cpuNanos);
+            counted.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * @param resourceMethod the HTTP method and the path template, e.g. {@code GET /users/{id}}
+     * @return the cost of the requests to the resource method so far, which is empty if there were none
+     */
+    public RequestCost getCost(String resourceMethod) {
+        awaitInFlight();
+        final Totals resourceTotals = totals.get(resourceMethod);
+        return resourceTotals == null ? new RequestCost(resourceMethod, 0, 0, 0, 0, 0)
+                : resourceTotals.snapshot(resourceMethod);
+    }
+
+    /**
+     * @return the cost of the requests served so far, across restarts, per resource method
+     */
+    public Map<String, RequestCost> getCosts() {
+        awaitInFlight();
+        final ImmutableSortedMap.Builder<String, RequestCost> costs = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+            costs.put(entry.getKey(), entry.getValue().snapshot(entry.getKey()));
+        }
+        return costs.build();
+    }
+
+    /**
+     * @return one line per resource method with the request count and the mean and max allocations and CPU time
+     */
+    public String getSummary() {
+        final StringBuilder summary = new StringBuilder();
+        for (RequestCost cost : getCosts().values()) {
+            summary.append(cost).append(String.format("%n"));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Forgets the requests counted so far, e.g. after warming the server up.
+     */
+    public void clear() {
+        awaitInFlight();
+        totals.clear();
+    }
+
+    /**
+     * Waits until as many requests have been counted as had started when called, or for the timeout.
+     */
+    private void awaitInFlight() {
+        final long target = started.get();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_TIMEOUT_MILLIS);
+        while (counted.get() < target && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private Totals totalsOf(String key) {
+        Totals resourceTotals = totals.get(key);
+        if (resourceTotals == null) {
+            final Totals created = new Totals();
+            resourceTotals = totals.putIfAbsent(key, created);
+            if (resourceTotals == null) {
+                resourceTotals = created;
+            }
+        }
+        return resourceTotals;
+    }
+
+    /* package */ static String describe(AbstractResourceMethod method) {
+        final StringBuilder path = new StringBuilder();
+        if (method.getResource().getPath() != null) {
+            appendSegment(path, method.getResource().getPath().getValue());
+        }
+        if (method instanceof AbstractSubResourceMethod) {
+            appendSegment(path, ((AbstractSubResourceMethod) method).getPath().getValue());
+        }
+        return method.getHttpMethod() + " " + (path.length() == 0 ? "/" : path.toString());
+    }
+
+    private static void appendSegment(StringBuilder path, String segment) {
+        final String trimmed = segment.replaceAll("^/+|/+$", "");
+        if (!trimmed.isEmpty()) {
+            path.append('/').append(trimmed);
+        }
+    }
+
+    private static final class Totals {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong allocatedBytes = new AtomicLong();
+        private final AtomicLong maxAllocatedBytes = new AtomicLong();
+        private final AtomicLong cpuNanos = new AtomicLong();
+        private final AtomicLong maxCpuNanos = new AtomicLong();
+
+        private void add(long allocated, long cpu) {
+            requests.incrementAndGet();
+            allocatedBytes.addAndGet(allocated);
+            cpuNanos.addAndGet(cpu);
+            raise(maxAllocatedBytes, allocated);
+            raise(maxCpuNanos, cpu);
+        }
+
+        private static void raise(AtomicLong max, long value) {
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        private RequestCost snapshot(String resourceMethod) {
+            return new RequestCost(resourceMethod, requests.get(), allocatedBytes.get(), maxAllocatedBytes.get(),
+                    cpuNanos.get(), maxCpuNanos.get());
+        }
+    }
+
+    /**
+     * Tells the servlet filter, which runs on the same thread, which resource method serves the request.
+     */
+    private final class ResourceMethodFilterFactory implements ResourceFilterFactory {
+        @Override
+        public List<ResourceFilter> create(AbstractMethod method) {
+            if (!(method instanceof AbstractResourceMethod)) {
+                return ImmutableList.of(); // a sub-resource locator, the located method is counted instead
+            }
+            final String description = describe((AbstractResourceMethod) method);
+            return ImmutableList.<ResourceFilter>of(new ResourceFilter() {
+                @Override
+                public ContainerRequestFilter getRequestFilter() {
+                    return new ContainerRequestFilter() {
+                        @Override
+                        public ContainerRequest filter(ContainerRequest request) {
+                            resourceMethod.set(description);
+                            return request;
+                        }
+                    };
+                }
+
+                @Override
+                public ContainerResponseFilter getResponseFilter() {
+                    return null;
+                }
+            });
+        }
+    }
+}
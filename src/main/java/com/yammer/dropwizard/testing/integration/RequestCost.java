@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bytes allocated and the CPU time spent serving the requests to one resource method, see
+ * {@link RequestAccounting}.
+ */
+public class RequestCost {
+    private final String resourceMethod;
+    private final long requests;
+    private final long allocatedBytes;
+    private final long maxAllocatedBytes;
+    private final long cpuNanos;
+    private final long maxCpuNanos;
+
+    /* package */ RequestCost(String resourceMethod, long requests, long allocatedBytes, long maxAllocatedBytes,
+                              long cpuNanos, long maxCpuNanos) {
+        this.resourceMethod = resourceMethod;
+        this.requests = requests;
+        this.allocatedBytes = allocatedBytes;
+        this.maxAllocatedBytes = maxAllocatedBytes;
+        this.cpuNanos = cpuNanos;
+        this.maxCpuNanos = maxCpuNanos;
+    }
+
+    /**
+     * @return the HTTP method and the path template, e.g. {@code GET /users/{id}}
+     */
+    public String getResourceMethod() {
+        return resourceMethod;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return the bytes allocated by all the requests
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the bytes allocated per request, or 0 if there were no requests
+     */
+    public long getMeanAllocatedBytes() {
+        return requests == 0 ? 0 : allocatedBytes / requests;
+    }
+
+    public long getMaxAllocatedBytes() {
+        return maxAllocatedBytes;
+    }
+
+    /**
+     * @return the CPU time spent by all the requests, in nanoseconds
+     */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /**
+     * @return the CPU time per request, in nanoseconds, or 0 if there were no requests
+     */
+    public long getMeanCpuNanos() {
+        return requests == 0 ? 0 : cpuNanos / requests;
+    }
+
+    public long getMaxCpuNanos() {
+        return maxCpuNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-40s %6d requests mean=%d B max=%d B cpu mean=%.3f ms max=%.3f ms", resourceMethod,
+                requests, getMeanAllocatedBytes(), maxAllocatedBytes, millis(getMeanCpuNanos()), millis(maxCpuNanos));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
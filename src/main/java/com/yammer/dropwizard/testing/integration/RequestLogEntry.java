@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request served by a server capturing its requests, see {@link InMemoryRequestLog}.
+ */
+public class RequestLogEntry {
+    private final long sequence;
+    private final long timestamp;
+    private final String method;
+    private final String path;
+    private final String query;
+    private final int status;
+    private final long bytes;
+    private final long latencyNanos;
+    private final String thread;
+
+    /* package */ RequestLogEntry(long sequence, long timestamp, String method, String path, String query, int status,
+                                  long bytes, long latencyNanos, String thread) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.method = method;
+        this.path = path;
+        this.query = query;
+        this.status = status;
+        this.bytes = bytes;
+        this.latencyNanos = latencyNanos;
+        this.thread = thread;
+    }
+
+    /**
+     * @return the position of the request in the log, counting from 0 since the log was created
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return when the request was received, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the query string, or null if there was none
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    public String getUri() {
+        return query == null ? path : path + '?' + query;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the number of bytes of the response body
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getLatency(TimeUnit unit) {
+        return unit.convert(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return the name of the thread which served the request
+     */
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * @return the method and the path, e.g. {@code GET /users}
+     */
+    public String getEndpoint() {
+        return method + ' ' + path;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %d %d bytes %.3f ms [%s]", method, getUri(), status, bytes,
+                latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1), thread);
+    }
+}
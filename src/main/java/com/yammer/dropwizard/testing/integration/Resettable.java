@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+/**
+ * Implemented by a service under test (or the delegate of a {@link ServiceWrapper}) whose state can be reset
+ * without restarting it, e.g. by clearing its in-memory stores and caches. Tests sharing one running server can
+ * then call {@link TestServer#reset()} between them instead of stopping and starting the server. The reset is
+ * also available as the {@code reset} task of the admin servlet.
+ */
+public interface Resettable {
+    /**
+     * Brings the running service back to the state it was in right after it started.
+     */
+    void reset() throws Exception;
+}
@@ -0,0 +1,340 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A directory private to one {@link TestServer}, into which its supporting files are staged. The files are
+ * staged in parallel from a content addressed cache next to the sandboxes: a fixture is hashed once per JVM,
+ * copied out of the classpath only if no identical file is cached yet, and hard linked into every sandbox,
+ * falling back to a copy where links are not supported. The cached files are read-only, and so are the links to them;
+ * a cached file is checked against its hash the first time a JVM uses it and whenever it changed since, and replaced
+ * if it was modified through a link. Files no JVM has used for a day are removed from the cache when a JVM first creates a
+ * sandbox. Removing the sandbox renames it away, which is atomic, and deletes it in the background.
+ */
+/* package */ final class Sandbox {
+    private static final Logger logger = LoggerFactory.getLogger(Sandbox.class);
+    private static final String CACHE_DIRECTORY = "dropwizard-testing-fixtures";
+    private static final String STAGING_PREFIX = "staging-";
+    private static final long CACHE_EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("sandbox-%d").build());
+    // the content hash of a resource, as long as its URL, size and modification time are the same
+    private static final Map<String, CachedResource> resourceHashes = Maps.newHashMap();
+    // the size and modification time of the cached files whose content has been checked against their hash
+    private static final Map<Path, FileStamp> verifiedFiles = Maps.newHashMap();
+    private static final Map<Path, Boolean> prunedCaches = Maps.newHashMap();
+    private final Path directory;
+    private final Path cache;
+
+    private Sandbox(Path directory, Path cache) {
+        this.directory = directory;
+        this.cache = cache;
+    }
+
+    /**
+     * @param parent where the sandbox and the fixture cache go, e.g. a tmpfs mount such as /dev/shm
+     */
+    /* package */ static Sandbox create(Path parent) throws IOException {
+        final Path cache = Files.createDirectories(parent.resolve(CACHE_DIRECTORY));
+        pruneOnce(cache);
+        return new Sandbox(Files.createTempDirectory(parent, "test-server-"), cache);
+    }
+
+    /* package */ Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stages the given resources of the class into the sandbox, at the same relative paths, creating the
+     * sandbox again if it has been deleted.
+     */
+    /* package */ void stage(final Class<?> testClass, String... names) throws IOException {
+        for (String name : names) {
+            final Path relative = Paths.get(name);
+            checkArgument(!relative.isAbsolute() && !relative.normalize().startsWith("..")
+                    && directory.resolve(relative).normalize().startsWith(directory),
+                    "The supporting file %s is not a relative path inside the sandbox", name);
+        }
+        Files.createDirectories(directory);
+        final List<Future<Void>> staged = Lists.newArrayList();
+        for (final String name : names) {
+            staged.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    final Path target = directory.resolve(name);
+                    Files.createDirectories(target.getParent());
+                    link(cachedCopy(testClass, name), target);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> file : staged) {
+            try {
+                file.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while staging the supporting files", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Moves the sandbox out of the way and deletes it in the background, so that it can be staged again
+     * right away.
+     */
+    /* package */ void delete() throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        final Path trash = directory.resolveSibling(directory.getFileName() + ".deleted-" + System.nanoTime());
+        Files.move(directory, trash, StandardCopyOption.ATOMIC_MOVE);
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                try {
+                    deleteRecursively(trash);
+                } catch (IOException e) {
+                    logger.warn("Unable to delete the sandbox {}", trash, e);
+                }
+                return null;
+            }
+        });
+    }
+
+    private Path cachedCopy(Class<?> testClass, String name) throws IOException {
+        final URL resource = testClass.getResource(name);
+        if (resource == null) {
+            throw new FileNotFoundException("No resource " + name + " next to " + testClass.getName());
+        }
+        final long lastModified;
+        final long length;
+        if ("file".equals(resource.getProtocol())) {
+            final Path file = Paths.get(URI.create(resource.toString()));
+            lastModified = Files.getLastModifiedTime(file).toMillis();
+            length = Files.size(file);
+        } else {
+            final URLConnection connection = resource.openConnection();
+            lastModified = connection.getLastModified();
+            length = connection.getContentLengthLong();
+        }
+        final String key = resource.toString();
+        String hash = null;
+        synchronized (resourceHashes) {
+            final CachedResource cached = resourceHashes.get(key);
+            if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+                hash = cached.hash;
+            }
+        }
+        if (hash == null) {
+            // reading is cheaper than writing, an identical fixture from an earlier run is not copied again
+            try (InputStream in = resource.openStream()) {
+                final HashingInputStream hashing = new HashingInputStream(Hashing.sha1(), in);
+                ByteStreams.copy(hashing, ByteStreams.nullOutputStream());
+                hash = hashing.hash().toString();
+            }
+            synchronized (resourceHashes) {
+                resourceHashes.put(key, new CachedResource(lastModified, length, hash));
+            }
+        }
+        final Path cached = cache.resolve(hash);
+        if (!Files.exists(cached) || !isIntact(cached, hash, length)) {
+            final Path temporary = Files.createTempFile(cache, STAGING_PREFIX, ".tmp");
+            try {
+                try (InputStream in = resource.openStream()) {
+                    Files.copy(in, temporary, StandardCopyOption.REPLACE_EXISTING);
+                }
+                temporary.toFile().setWritable(false, false);
+                // replaces a modified file as well; the sandboxes linked to it keep theirs
+                Files.move(temporary, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                verified(cached);
+            } catch (IOException e) {
+                if (!Files.exists(cached)) { // unless cached by another thread or JVM in the meantime
+                    throw e;
+                }
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * @return whether the cached file still has the given length and hash, checked only if it changed since the
+     * last check
+     */
+    private static boolean isIntact(Path cached, String hash, long length) throws IOException {
+        final FileStamp stamp = FileStamp.of(cached);
+        synchronized (verifiedFiles) {
+            if (stamp.equals(verifiedFiles.get(cached))) {
+                return true;
+            }
+        }
+        final boolean intact;
+        if (length >= 0 && stamp.length != length) {
+            intact = false;
+        } else {
+            try (InputStream in = Files.newInputStream(cached)) {
+                final HashingInputStream hashing = new HashingInputStream(Hashing.sha1(), in);
+                ByteStreams.copy(hashing, ByteStreams.nullOutputStream());
+                intact = hashing.hash().toString().equals(hash);
+            }
+        }
+        if (intact) {
+            Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis())); // keeps it from expiring
+            verified(cached);
+        } else {
+            logger.warn("The cached fixture {} was modified, caching it again", cached);
+        }
+        return intact;
+    }
+
+    private static void verified(Path cached) throws IOException {
+        final FileStamp stamp = FileStamp.of(cached);
+        synchronized (verifiedFiles) {
+            verifiedFiles.put(cached, stamp);
+        }
+    }
+
+    /**
+     * Removes the cached files neither created nor first used by a JVM for a day, and the leftovers of interrupted copies, once
+     * per cache and JVM. A sandbox linked to a removed file keeps it.
+     */
+    private static void pruneOnce(Path cache) {
+        synchronized (prunedCaches) {
+            if (prunedCaches.put(cache, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+        final long expired = System.currentTimeMillis() - CACHE_EXPIRY_MILLIS;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cache)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < expired) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to prune the fixture cache {}", cache, e);
+        }
+    }
+
+    private static void link(Path cached, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, cached);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(cached, target);
+        }
+    }
+
+    /* package */ static void deleteRecursively(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static final class FileStamp {
+        private final long length;
+        private final FileTime lastModified;
+
+        private FileStamp(long length, FileTime lastModified) {
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        private static FileStamp of(Path file) throws IOException {
+            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new FileStamp(attributes.size(), attributes.lastModifiedTime());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof FileStamp && ((FileStamp) other).length == length
+                    && ((FileStamp) other).lastModified.equals(lastModified);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(length, lastModified);
+        }
+    }
+
+    private static final class CachedResource {
+        private final long lastModified;
+        private final long length;
+        private final String hash;
+
+        private CachedResource(long lastModified, long length, String hash) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How a {@link ShardedServerRunner} spread the methods of a test class across its servers: the methods run
+ * and the time spent on each server, and the wall-clock time saved over running the methods one by one.
+ */
+public class ShardReport {
+    private final String testClass;
+    private final int[] methods;
+    private final int[] stolen;
+    private final long[] busyNanos;
+    private final long startupNanos;
+    private final long wallNanos;
+
+    /* package */ ShardReport(String testClass, int[] methods, int[] stolen, long[] busyNanos, long startupNanos,
+                              long wallNanos) {
+        this.testClass = testClass;
+        this.methods = Arrays.copyOf(methods, methods.length);
+        this.stolen = Arrays.copyOf(stolen, stolen.length);
+        this.busyNanos = Arrays.copyOf(busyNanos, busyNanos.length);
+        this.startupNanos = startupNanos;
+        this.wallNanos = wallNanos;
+    }
+
+    public int getInstanceCount() {
+        return methods.length;
+    }
+
+    /**
+     * @return the number of methods run against the given server
+     */
+    public int getMethodCount(int instance) {
+        return methods[instance];
+    }
+
+    /**
+     * @return the number of those methods taken over from another server's queue
+     */
+    public int getStolenCount(int instance) {
+        return stolen[instance];
+    }
+
+    /**
+     * @return the time spent running methods and cleaning up after them on the given server
+     */
+    public long getBusy(int instance, TimeUnit unit) {
+        return unit.convert(busyNanos[instance], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the share of the time the methods ran during which the given server was busy, between 0 and 1
+     */
+    public double getUtilisation(int instance) {
+        final long methodsNanos = wallNanos - startupNanos;
+        return methodsNanos <= 0 ? 0 : busyNanos[instance] / (double) methodsNanos;
+    }
+
+    /**
+     * @return the time it took to start all the servers
+     */
+    public long getStartup(TimeUnit unit) {
+        return unit.convert(startupNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the time from starting the servers until the last method completed, not counting their stop
+     */
+    public long getWallClock(TimeUnit unit) {
+        return unit.convert(wallNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the busy time of all the servers together less the time the methods ran, i.e., roughly what running
+     * the methods one after another on a single server would have added. The servers start side by side, so
+     * starting them is taken to cost as much as starting one.
+     */
+    public long getSaved(TimeUnit unit) {
+        long totalBusyNanos = 0;
+        for (long busy : busyNanos) {
+            totalBusyNanos += busy;
+        }
+        return unit.convert(Math.max(0, totalBusyNanos - (wallNanos - startupNanos)), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder report = new StringBuilder(String.format(
+                "%s on %d servers in %d ms (%d ms starting them), %d ms saved%n", testClass, methods.length,
+                getWallClock(TimeUnit.MILLISECONDS), getStartup(TimeUnit.MILLISECONDS), getSaved(TimeUnit.MILLISECONDS)));
+        for (int i = 0; i < methods.length; i++) {
+            report.append(String.format("  server %d: %3d methods (%d stolen), busy %d ms, %.0f%% utilised%n", i,
+                    methods[i], stolen[i], getBusy(i, TimeUnit.MILLISECONDS), 100 * getUtilisation(i)));
+        }
+        return report.toString();
+    }
+}
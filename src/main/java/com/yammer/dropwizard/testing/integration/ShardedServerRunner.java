@@ -0,0 +1,412 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Ignore;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.FrameworkField;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Runs the methods of a test class in parallel, each against one of several identical servers, rather than
+ * one after another against a single server:
+ * <pre>
+ * &#64;RunWith(ShardedServerRunner.class)
+ * &#64;ShardedServers(instances = 4, cleanup = ShardedServers.Cleanup.RESET)
+ * public class SlowIntegrationTest {
+ *     &#64;ShardedServers.Server
+ *     public TestServer&lt;MyConfiguration, MyService&gt; server;
+ *
+ *     &#64;ShardedServers.Factory
+ *     public static TestServer&lt;MyConfiguration, MyService&gt; createServer() throws Exception {
+ *         return TestServer.create(SlowIntegrationTest.class, new MyService(), CONFIG, OVERRIDES, "value.txt")
+ *                 .withSandbox();
+ *     }
+ * }
+ * </pre>
+ * The servers are started together, each with a thread of its own. The methods are dealt out to the servers'
+ * queues up front and a server which runs out of work takes methods from the back of the other queues, so that
+ * slow methods do not leave servers idle. A server which cannot be cleaned up is restarted, and retired if that
+ * fails too, its methods going to the others. The servers are stopped once all the methods have run and a
+ * {@link ShardReport} is logged.
+ *
+ * The methods must not depend on each other, and anything shared between them, e.g. static fields, must be
+ * thread safe. The servers run in one JVM, so servers which stage files should use a sandbox.
+ */
+public class ShardedServerRunner extends BlockJUnit4ClassRunner {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedServerRunner.class);
+    private final ThreadLocal<Shard> currentShard = new ThreadLocal<>();
+    private final List<Runnable> scheduled = Lists.newArrayList();
+    private volatile ShardReport report;
+
+    public ShardedServerRunner(Class<?> testClass) throws InitializationError {
+        super(testClass);
+        setScheduler(new RunnerScheduler() {
+            @Override
+            public void schedule(Runnable childStatement) {
+                scheduled.add(childStatement);
+            }
+
+            @Override
+            public void finished() {
+                try {
+                    runSharded();
+                } catch (Throwable e) {
+                    throw new IllegalStateException("Unable to run the methods on sharded servers", e);
+                } finally {
+                    scheduled.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return how the methods were spread across the servers in the last run, or null before it completed
+     */
+    public ShardReport getReport() {
+        return report;
+    }
+
+    @Override
+    protected void collectInitializationErrors(List<Throwable> errors) {
+        super.collectInitializationErrors(errors);
+        final List<FrameworkMethod> factories = getTestClass().getAnnotatedMethods(ShardedServers.Factory.class);
+        if (factories.size() != 1) {
+            errors.add(new Exception("Exactly one method must be annotated with @ShardedServers.Factory"));
+        }
+        for (FrameworkMethod factory : factories) {
+            if (!factory.isStatic() || !factory.isPublic() || factory.getMethod().getParameterTypes().length > 0
+                    || !TestServer.class.isAssignableFrom(factory.getReturnType())) {
+                errors.add(new Exception("Method " + factory.getName()
+                        + " must be public static, take no arguments and return a TestServer"));
+            }
+        }
+        for (FrameworkField field : getTestClass().getAnnotatedFields(ShardedServers.Server.class)) {
+            if (Modifier.isStatic(field.getField().getModifiers())
+                    || !field.getField().getType().isAssignableFrom(TestServer.class)) {
+                errors.add(new Exception("Field " + field.getField().getName()
+                        + " must be an instance field of type TestServer"));
+            }
+        }
+    }
+
+    @Override
+    protected Object createTest() throws Exception {
+        final Object test = super.createTest();
+        final Shard shard = currentShard.get();
+        checkState(shard != null, "No server is left to run the test against");
+        for (FrameworkField field : getTestClass().getAnnotatedFields(ShardedServers.Server.class)) {
+            field.getField().setAccessible(true);
+            field.getField().set(test, shard.server);
+        }
+        return test;
+    }
+
+    // the methods run on several threads at once, while the listeners of JUnit 4.11 expect one at a time
+    @Override
+    protected Statement childrenInvoker(RunNotifier notifier) {
+        return super.childrenInvoker(new SynchronizedRunNotifier(notifier));
+    }
+
+    @Override
+    protected void runChild(FrameworkMethod method, RunNotifier notifier) {
+        final Shard shard = currentShard.get();
+        if (shard == null || method.getAnnotation(Ignore.class) != null) {
+            super.runChild(method, notifier); // reported as ignored, or failed for want of a server
+            return;
+        }
+        final long start = System.nanoTime();
+        super.runChild(method, notifier);
+        final ShardedServers.CleanupAfter override = method.getAnnotation(ShardedServers.CleanupAfter.class);
+        shard.cleanUp(override != null ? override.value() : getSettings().cleanup());
+        shard.ran(System.nanoTime() - start);
+    }
+
+    private void runSharded() throws Throwable {
+        if (scheduled.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        final List<Shard> shards = startShards(Math.min(instanceCount(), scheduled.size()));
+        final long startupNanos = System.nanoTime() - start;
+        final long finished;
+        try {
+            for (int i = 0; i < scheduled.size(); i++) {
+                shards.get(i % shards.size()).queue.addLast(scheduled.get(i));
+            }
+            final List<Thread> workers = Lists.newArrayList();
+            for (final Shard shard : shards) {
+                final Thread worker = new Thread("sharded-server-" + shard.index) {
+                    @Override
+                    public void run() {
+                        shard.work(shards);
+                    }
+                };
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            for (Shard shard : shards) {
+                Runnable left;
+                while ((left = shard.queue.pollFirst()) != null) {
+                    left.run(); // every server has been retired, so the methods fail for want of one
+                }
+            }
+            finished = System.nanoTime();
+        } finally {
+            stopShards(shards);
+        }
+        report = createReport(shards, startupNanos, finished - start);
+        logger.info("{}", report);
+    }
+
+    private List<Shard> startShards(int count) throws Throwable {
+        final FrameworkMethod factory = getTestClass().getAnnotatedMethods(ShardedServers.Factory.class).get(0);
+        final List<Shard> shards = Lists.newArrayList();
+        final List<ListenableFuture<? extends TestServer<?, ?>>> starts = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            final TestServer<?, ?> server = (TestServer<?, ?>) factory.invokeExplosively(null);
+            server.withEphemeralPorts();
+            shards.add(new Shard(i, server));
+            starts.add(server.startAsync());
+        }
+        Futures.successfulAsList(starts).get(); // lets every start complete, so that none is left running below
+        try {
+            for (ListenableFuture<? extends TestServer<?, ?>> started : starts) {
+                started.get();
+            }
+        } catch (ExecutionException e) {
+            stopShards(shards);
+            throw e;
+        }
+        return shards;
+    }
+
+    private static void stopShards(List<Shard> shards) {
+        for (Shard shard : shards) {
+            try {
+                if (shard.server.isRunning()) {
+                    shard.server.stop();
+                }
+            } catch (Exception e) {
+                logger.warn("Unable to stop sharded server {}", shard.index, e);
+            }
+        }
+    }
+
+    private ShardReport createReport(List<Shard> shards, long startupNanos, long wallNanos) {
+        final int[] methods = new int[shards.size()];
+        final int[] stolen = new int[shards.size()];
+        final long[] busyNanos = new long[shards.size()];
+        for (Shard shard : shards) {
+            methods[shard.index] = shard.methods;
+            stolen[shard.index] = shard.stolen;
+            busyNanos[shard.index] = shard.busyNanos;
+        }
+        return new ShardReport(getTestClass().getName(), methods, stolen, busyNanos, startupNanos, wallNanos);
+    }
+
+    private int instanceCount() {
+        final int instances = getSettings().instances();
+        return instances > 0 ? instances : Runtime.getRuntime().availableProcessors();
+    }
+
+    private ShardedServers getSettings() {
+        final ShardedServers settings = getTestClass().getJavaClass().getAnnotation(ShardedServers.class);
+        return settings != null ? settings : Defaults.class.getAnnotation(ShardedServers.class);
+    }
+
+    @ShardedServers
+    private static final class Defaults {
+    }
+
+    /**
+     * Passes the events on to the notifier of the run one at a time, as {@code RunNotifier} of JUnit 4.12 does.
+     */
+    private static final class SynchronizedRunNotifier extends RunNotifier {
+        private final RunNotifier delegate;
+
+        private SynchronizedRunNotifier(RunNotifier delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void addListener(RunListener listener) {
+            delegate.addListener(listener);
+        }
+
+        @Override
+        public void addFirstListener(RunListener listener) {
+            delegate.addFirstListener(listener);
+        }
+
+        @Override
+        public void removeListener(RunListener listener) {
+            delegate.removeListener(listener);
+        }
+
+        @Override
+        public synchronized void fireTestRunStarted(Description description) {
+            delegate.fireTestRunStarted(description);
+        }
+
+        @Override
+        public synchronized void fireTestRunFinished(Result result) {
+            delegate.fireTestRunFinished(result);
+        }
+
+        @Override
+        public synchronized void fireTestStarted(Description description) throws StoppedByUserException {
+            delegate.fireTestStarted(description);
+        }
+
+        @Override
+        public synchronized void fireTestFailure(Failure failure) {
+            delegate.fireTestFailure(failure);
+        }
+
+        @Override
+        public synchronized void fireTestAssumptionFailed(Failure failure) {
+            delegate.fireTestAssumptionFailed(failure);
+        }
+
+        @Override
+        public synchronized void fireTestIgnored(Description description) {
+            delegate.fireTestIgnored(description);
+        }
+
+        @Override
+        public synchronized void fireTestFinished(Description description) {
+            delegate.fireTestFinished(description);
+        }
+
+        @Override
+        public void pleaseStop() {
+            delegate.pleaseStop();
+        }
+    }
+
+    /**
+     * A server, the queue of the methods dealt to it and what it ran, written by its own worker thread only.
+     */
+    private final class Shard {
+        private final int index;
+        private final TestServer<?, ?> server;
+        private final LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<>();
+        private volatile boolean retired = false;
+        private boolean takenOver = false;
+        private int methods = 0;
+        private int stolen = 0;
+        private long busyNanos = 0;
+
+        private Shard(int index, TestServer<?, ?> server) {
+            this.index = index;
+            this.server = server;
+        }
+
+        private void work(List<Shard> shards) {
+            currentShard.set(this);
+            try {
+                Runnable method;
+                while (!retired && (method = next(shards)) != null) {
+                    method.run();
+                }
+            } finally {
+                currentShard.remove();
+            }
+        }
+
+        private Runnable next(List<Shard> shards) {
+            final Runnable own = queue.pollFirst();
+            takenOver = own == null;
+            if (own != null) {
+                return own;
+            }
+            for (int i = 1; i < shards.size(); i++) {
+                final Runnable taken = shards.get((index + i) % shards.size()).queue.pollLast();
+                if (taken != null) {
+                    return taken;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Accounts for a method which was run, rather than ignored, and for the clean up after it.
+         */
+        private void ran(long nanos) {
+            methods++;
+            busyNanos += nanos;
+            if (takenOver) {
+                stolen++;
+            }
+        }
+
+        private void cleanUp(ShardedServers.Cleanup cleanup) {
+            try {
+                switch (cleanup) {
+                    case RESET:
+                        server.reset();
+                        break;
+                    case RESTART:
+                        server.restart();
+                        break;
+                    default:
+                        break;
+                }
+            } catch (Exception e) {
+                logger.warn("Unable to clean up sharded server {}, restarting it", index, e);
+                restartOrRetire();
+            }
+        }
+
+        private void restartOrRetire() {
+            try {
+                if (server.isRunning()) {
+                    server.restart();
+                } else {
+                    server.start();
+                }
+            } catch (Exception e) {
+                logger.error("Unable to restart sharded server {}, retiring it", index, e);
+                retired = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configures a test class run by the {@link ShardedServerRunner}: how many servers its methods are spread
+ * across and how a server is cleaned up between two methods.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ShardedServers {
+    /**
+     * @return the number of servers, or 0 for one per core. No more servers are started than there are methods.
+     */
+    int instances() default 0;
+
+    /**
+     * @return what is done to a server after each method, unless the method says otherwise with
+     * {@link CleanupAfter}
+     */
+    Cleanup cleanup() default Cleanup.NONE;
+
+    enum Cleanup {
+        /**
+         * The next method gets the server as the last one left it.
+         */
+        NONE,
+        /**
+         * The server is {@link TestServer#reset() reset}, which requires a {@link Resettable} service.
+         */
+        RESET,
+        /**
+         * The server is {@link TestServer#restart() restarted}.
+         */
+        RESTART
+    }
+
+    /**
+     * Marks the public static method without arguments which creates a server, not started yet. It is called
+     * once per instance; the servers are bound to ephemeral ports and started by the runner.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    @interface Factory {
+    }
+
+    /**
+     * Marks the field of type {@link TestServer} the server a method runs against is injected into.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.FIELD)
+    @interface Server {
+    }
+
+    /**
+     * Overrides {@link ShardedServers#cleanup()} for one method, e.g. one which breaks the server.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    @interface CleanupAfter {
+        Cleanup value();
+    }
+}
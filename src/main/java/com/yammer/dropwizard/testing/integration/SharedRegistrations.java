@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.jmx.JMXConfigurator;
+import com.google.common.collect.Maps;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Reference counts the JVM wide registrations (health checks in the default registry, the logging MBean)
+ * made by the services started in this JVM, so that stopping one of several concurrently running services
+ * does not tear down the registrations the others still rely on.
+ */
+/* package */ final class SharedRegistrations {
+    /* package */ static final String LOGGING_MBEAN_NAME = "com.yammer:type=Logging";
+    private static final Map<String, Integer> referenceCounts = Maps.newHashMap();
+
+    private SharedRegistrations() {
+    }
+
+    /* package */ static synchronized void acquire(String key) {
+        final Integer count = referenceCounts.get(key);
+        referenceCounts.put(key, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * @return true if the last reference to the key has been released, i.e., the registration can be removed
+     */
+    /* package */ static synchronized boolean release(String key) {
+        final Integer count = referenceCounts.get(key);
+        if (count == null || count <= 1) {
+            referenceCounts.remove(key);
+            return true;
+        }
+        referenceCounts.put(key, count - 1);
+        return false;
+    }
+
+    /**
+     * Registers the logging MBean up front. Dropwizard registers it during configuration parsing with a
+     * check-then-act, which fails when two services are started concurrently. The copies of this class of the
+     * {@link IsolatedTestServer}s leave it to the copy of the test, which registers it before they start: their
+     * reference counts are their own, and an MBean of theirs would keep their class loader alive.
+     */
+    /* package */ static synchronized void acquireLoggingMBean() throws Exception {
+        if (IsolatedClassLoaders.isIsolated()) {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName loggerObjectName = new ObjectName(LOGGING_MBEAN_NAME);
+        if (!server.isRegistered(loggerObjectName)) {
+            final LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+            try {
+                server.registerMBean(new JMXConfigurator(context, server, loggerObjectName), loggerObjectName);
+            } catch (InstanceAlreadyExistsException ignored) {
+                // registered concurrently by dropwizard itself
+            }
+        }
+        acquire(LOGGING_MBEAN_NAME);
+    }
+
+    /* package */ static synchronized void releaseLoggingMBean() throws Exception {
+        if (IsolatedClassLoaders.isIsolated()) {
+            return;
+        }
+        if (release(LOGGING_MBEAN_NAME)) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName loggerObjectName = new ObjectName(LOGGING_MBEAN_NAME);
+            if (server.isRegistered(loggerObjectName)) {
+                server.unregisterMBean(loggerObjectName);
+            }
+        }
+    }
+}
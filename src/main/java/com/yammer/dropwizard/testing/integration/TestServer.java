@@ -16,19 +16,47 @@
 package com.yammer.dropwizard.testing.integration;
 
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
 import com.yammer.dropwizard.Service;
 import com.yammer.dropwizard.config.Configuration;
+import org.eclipse.jetty.server.LocalConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static com.yammer.dropwizard.testing.integration.LifecycleServerCommand.COMMAND_LINE_NAME;
 
 /**
@@ -39,20 +67,42 @@ import static com.yammer.dropwizard.testing.integration.LifecycleServerCommand.C
  * @param <S>
  */
 public class TestServer<T extends Configuration, S extends Service<T>> {
+    private static final Logger logger = LoggerFactory.getLogger(TestServer.class);
+    private static final long DEFAULT_READINESS_TIMEOUT_SECONDS = 30;
+    private static final long READINESS_POLL_MILLIS = 20;
+    private static final ExecutorService ASYNC_STARTER = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("test-server-start-%d").build());
+    private static final ScheduledExecutorService READINESS_TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("test-server-readiness-timeout").build());
+    /** replaced by the path of the sandbox in the values of the config overrides, see {@link #withSandbox()} */
+    public static final String SANDBOX_PLACEHOLDER = "${sandbox}";
     private final LifecycleService<T, S> serviceLifecycleWrapper;
     private final List<String> filesToBeDeleted = Lists.newArrayList();
     private final String configFilePath;
+    private final Map<String, String> configOverrides;
+    private final T configuration;
     private final String[] supportingFilesPaths;
     private final Class<?> testClass;
+    private final PooledClients clients = new PooledClients();
+    private Client client;
+    private Client inProcessClient;
+    private Path sandboxParent;
+    private Sandbox sandbox;
     private boolean wasRun = false;
 
     /* package */ TestServer(Class<?> testClass, LifecycleService<T, S> testServer, final String configFile,
                              String... additionalFiles) throws Exception {
+        this(testClass, testServer, checkNotNull(configFile), ImmutableMap.<String, String>of(), null, additionalFiles);
+    }
+
+    private TestServer(Class<?> testClass, LifecycleService<T, S> testServer, String configFile,
+                       Map<String, String> configOverrides, T configuration, String... additionalFiles) {
         checkNotNull(testServer);
-        checkNotNull(configFile);
         checkNotNull(testClass);
         this.serviceLifecycleWrapper = testServer;
         this.configFilePath = configFile;
+        this.configOverrides = ImmutableMap.copyOf(configOverrides);
+        this.configuration = configuration;
         this.supportingFilesPaths = Arrays.copyOf(additionalFiles, additionalFiles.length);
         this.testClass = testClass;
     }
@@ -76,45 +126,476 @@ public class TestServer<T extends Configuration, S extends Service<T>> {
         return new TestServer<>(testClass, new LifecycleService<>(serviceUnderTest), configFile, additionalFiles);
     }
 
+    /**
+     * As {@link #create(Class, com.yammer.dropwizard.Service, String, String...)}, with the values in the config
+     * file overridden by the given map. The keys are dotted paths into the configuration, e.g.,
+     * {@code http.port=0}. The config file is parsed once and cached, so variants of a base configuration
+     * are cheap.
+     */
+    public static <T extends Configuration, S extends Service<T>> TestServer<T, S>
+    create(Class<?> testClass, S serviceUnderTest, String configFile, Map<String, String> configOverrides,
+           String... additionalFiles) throws Exception {
+        return new TestServer<>(testClass, new LifecycleService<>(serviceUnderTest), checkNotNull(configFile),
+                checkNotNull(configOverrides), null, additionalFiles);
+    }
+
+    /**
+     * As {@link #create(Class, com.yammer.dropwizard.Service, String, String...)}, with an already built
+     * configuration object instead of a config file. The configuration is validated when the server starts.
+     */
+    public static <T extends Configuration, S extends Service<T>> TestServer<T, S>
+    create(Class<?> testClass, S serviceUnderTest, T configuration, String... additionalFiles) throws Exception {
+        return new TestServer<>(testClass, new LifecycleService<>(serviceUnderTest), null,
+                ImmutableMap.<String, String>of(), checkNotNull(configuration), additionalFiles);
+    }
+
+    /**
+     * Binds the service and admin connectors to free ports chosen by the OS instead of the ports from the
+     * config file, so that several servers can run side by side in one JVM. Use {@link #getBaseUri()} and
+     * {@link #getAdminUri()} to find out where the server is listening.
+     * @return this server
+     */
+    public TestServer<T, S> withEphemeralPorts() {
+        checkState(!wasRun, "The server has already been started");
+        serviceLifecycleWrapper.getServerCommand().setUseEphemeralPorts(true);
+        return this;
+    }
+
+    /**
+     * Attaches an in-memory connector to the server, through which the clients returned by
+     * {@link #createInProcessClient()} talk to the service without going through a socket.
+     * @return this server
+     */
+    public TestServer<T, S> withInProcessTransport() {
+        checkState(!wasRun, "The server has already been started");
+        serviceLifecycleWrapper.getServerCommand().setUseInProcessTransport(true);
+        return this;
+    }
+
+    /**
+     * Stages the supporting files into a directory of their own, in the temporary directory, instead of the
+     * working directory, see {@link #withSandbox(Path)}.
+     * @return this server
+     */
+    public TestServer<T, S> withSandbox() {
+        return withSandbox(Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Stages the supporting files into a directory of their own, so that several servers can use files of the
+     * same name. The files are staged in parallel and hard linked from a cache of their content, so unchanged
+     * fixtures are not copied again; the staged files are read-only. The sandbox is created on start, and removed
+     * on stop or when the start fails.
+     * Use {@link #SANDBOX_PLACEHOLDER} in the config overrides, or {@link #getSandbox()}, to point the
+     * configuration at the files.
+     * @param parent where the sandbox is created, e.g. a tmpfs mount such as /dev/shm
+     * @return this server
+     */
+    public TestServer<T, S> withSandbox(Path parent) {
+        checkState(!wasRun, "The server has already been started");
+        checkState(sandboxParent == null, "The server already has a sandbox");
+        this.sandboxParent = checkNotNull(parent);
+        return this;
+    }
+
+    /**
+     * @return the directory the supporting files are staged into. Requires {@link #withSandbox()} and a
+     * {@link #start()}.
+     */
+    public Path getSandbox() {
+        checkState(sandboxParent != null, "The server has no sandbox, see withSandbox()");
+        checkState(sandbox != null, "The sandbox is created on start");
+        return sandbox.getDirectory();
+    }
+
+    /**
+     * Shrinks the thread pools, acceptors and buffers of the server to {@link LeanProfile#create() a small
+     * footprint}, regardless of the configuration, so that many servers fit in one JVM.
+     * @return this server
+     */
+    public TestServer<T, S> withLeanProfile() {
+        return withLeanProfile(LeanProfile.create());
+    }
+
+    public TestServer<T, S> withLeanProfile(LeanProfile profile) {
+        checkState(!wasRun, "The server has already been started");
+        serviceLifecycleWrapper.getServerCommand().setLeanProfile(checkNotNull(profile));
+        return this;
+    }
+
+    /**
+     * @return the thread pool sizes, acceptors, selectors and buffer sizes the server runs with, e.g.
+     * {@code main.acceptors}, see {@link #withLeanProfile()}
+     */
+    public Map<String, Object> getEffectiveProfile() {
+        return serviceLifecycleWrapper.getServerCommand().getEffectiveProfile();
+    }
+
+    /**
+     * Keeps the last {@link InMemoryRequestLog#DEFAULT_CAPACITY} requests in memory instead of logging them
+     * as configured, see {@link #getRequestLog()}.
+     * @return this server
+     */
+    public TestServer<T, S> withRequestCapture() {
+        return withRequestCapture(InMemoryRequestLog.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of requests kept
+     * @return this server
+     */
+    public TestServer<T, S> withRequestCapture(int capacity) {
+        checkState(!wasRun, "The server has already been started");
+        serviceLifecycleWrapper.getServerCommand().setRequestLog(new InMemoryRequestLog(capacity));
+        return this;
+    }
+
+    /**
+     * @return the requests served so far, across restarts. Requires {@link #withRequestCapture()}.
+     */
+    public InMemoryRequestLog getRequestLog() {
+        final InMemoryRequestLog requestLog = serviceLifecycleWrapper.getServerCommand().getRequestLog();
+        checkState(requestLog != null, "The requests are not captured, see withRequestCapture()");
+        return requestLog;
+    }
+
+    /**
+     * Measures the bytes allocated and the CPU time spent by every request, per resource method, see
+     * {@link #getRequestAccounting()}.
+     * @return this server
+     */
+    public TestServer<T, S> withRequestAccounting() {
+        checkState(!wasRun, "The server has already been started");
+        serviceLifecycleWrapper.getServerCommand().setRequestAccounting(new RequestAccounting());
+        return this;
+    }
+
+    /**
+     * @return the cost of the requests served so far, across restarts. Requires {@link #withRequestAccounting()}.
+     */
+    public RequestAccounting getRequestAccounting() {
+        final RequestAccounting accounting = serviceLifecycleWrapper.getServerCommand().getRequestAccounting();
+        checkState(accounting != null, "The requests are not accounted for, see withRequestAccounting()");
+        return accounting;
+    }
+
+    /**
+     * Records the requests served and their responses to the given file, to be replayed by a
+     * {@link TrafficReplayer}, see {@link TrafficRecorder}.
+     * @return this server
+     */
+    public TestServer<T, S> withTrafficRecording(Path file) {
+        checkState(!wasRun, "The server has already been started");
+        serviceLifecycleWrapper.getServerCommand().setTrafficRecorder(new TrafficRecorder(file));
+        return this;
+    }
+
+    /**
+     * @return the recorder of the traffic, whose log is complete once the server stops. Requires
+     * {@link #withTrafficRecording(Path)}.
+     */
+    public TrafficRecorder getTrafficRecorder() {
+        final TrafficRecorder recorder = serviceLifecycleWrapper.getServerCommand().getTrafficRecorder();
+        checkState(recorder != null, "The traffic is not recorded, see withTrafficRecording()");
+        return recorder;
+    }
+
+    /**
+     * Has {@link #stop()} wait for the requests in flight to complete, for no longer than the given timeout, rather
+     * than for the shutdown grace period of the configuration, and clean up after the service concurrently, see
+     * {@link #getDrainReport()}. Suits services with long polls, which would otherwise hold up every stop.
+     * @return this server
+     */
+    public TestServer<T, S> withDrainTimeout(long timeout, TimeUnit unit) {
+        checkState(!wasRun, "The server has already been started");
+        serviceLifecycleWrapper.getServerCommand().setDrainTimeout(timeout, unit);
+        return this;
+    }
+
+    /**
+     * @return how the requests in flight fared on the last stop or restart, see {@link #withDrainTimeout(long, TimeUnit)}
+     */
+    public DrainReport getDrainReport() {
+        return serviceLifecycleWrapper.getServerCommand().getDrainReport();
+    }
+
+    /**
+     * @return a Jersey client which dispatches its requests in memory to this server, regardless of the host
+     * and port of the resource URI. Requires {@link #withInProcessTransport()}; requests fail while the server
+     * is not running.
+     */
+    public Client createInProcessClient() {
+        return createInProcessClient(new DefaultClientConfig());
+    }
+
+    public Client createInProcessClient(ClientConfig clientConfig) {
+        checkState(hasInProcessTransport(), "The in-process transport is not enabled, see withInProcessTransport()");
+        return new Client(new InProcessClientHandler(new Supplier<LocalConnector>() {
+            @Override
+            public LocalConnector get() {
+                return serviceLifecycleWrapper.getServerCommand().getLocalConnector();
+            }
+        }), clientConfig);
+    }
+
+    /**
+     * @return a Jersey client with a pool of {@link PooledClients#DEFAULT_MAX_CONNECTIONS keep-alive connections},
+     * shared by the callers until the server stops, which shuts it down
+     */
+    public synchronized Client getClient() {
+        if (client == null) {
+            client = createClient(new DefaultClientConfig(), PooledClients.DEFAULT_MAX_CONNECTIONS);
+        }
+        return client;
+    }
+
+    /**
+     * @return a resource of {@link #getClient() the shared client} at the given path of {@link #getBaseUri()}
+     */
+    public WebResource resource(String path) {
+        return getClient().resource(getBaseUri().resolve(path));
+    }
+
+    /**
+     * @param maxConnections the size of the connection pool, i.e., the number of requests the client can have in
+     *                       flight at a time
+     * @return a new Jersey client with a pool of keep-alive connections, shut down when the server stops
+     */
+    public Client createClient(ClientConfig clientConfig, int maxConnections) {
+        return clients.create(clientConfig, maxConnections);
+    }
+
+    /**
+     * @return an in-process client shared by the callers until the server stops, which destroys it
+     */
+    /* package */ synchronized Client getInProcessClient() {
+        if (inProcessClient == null) {
+            inProcessClient = createInProcessClient();
+        }
+        return inProcessClient;
+    }
+
+    /* package */ boolean hasInProcessTransport() {
+        return serviceLifecycleWrapper.getServerCommand().isUseInProcessTransport();
+    }
+
     private void prepareFileForTest(String name) throws IOException {
         try (InputStream secretsInputStream = testClass.getResourceAsStream(name)) {
             Files.copy(secretsInputStream, new File(name).toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
+    /**
+     * Starts the server. The first start runs the service through the command line, as dropwizard would.
+     * Subsequent starts, after {@link #stop()}, reuse the parsed configuration and only run the service again,
+     * see {@link LifecycleService#rerun()}. If the start fails, the staged files and the sandbox are removed again.
+     */
     public void start() throws Exception {
-        if (wasRun) {
-            throw new IllegalStateException("The server can be started only once");
+        checkState(!isRunning(), "The server is already running");
+        if (sandboxParent != null && sandbox == null) {
+            sandbox = Sandbox.create(sandboxParent);
+        }
+        try {
+            setUpFiles(supportingFilesPaths);
+            if (serviceLifecycleWrapper.canRerun()) {
+                serviceLifecycleWrapper.rerun();
+            } else if (configuration != null) {
+                serviceLifecycleWrapper.run(configuration);
+            } else if (!configOverrides.isEmpty()) {
+                serviceLifecycleWrapper.run(configFilePath, resolveSandbox(configOverrides));
+            } else {
+                final String[] runArgs = {COMMAND_LINE_NAME, configFilePath};
+                serviceLifecycleWrapper.run(runArgs);
+            }
+        } catch (Exception e) {
+            try {
+                cleanUpFiles();
+            } catch (IOException cleanUpFailure) {
+                e.addSuppressed(cleanUpFailure);
+            }
+            throw e;
         }
-        setUpFiles(supportingFilesPaths);
-        final String[] runArgs = {COMMAND_LINE_NAME, configFilePath};
-        serviceLifecycleWrapper.run(runArgs);
         wasRun = true;
     }
 
+    /**
+     * As {@link #startAsync(long, TimeUnit)}, with a timeout of 30 seconds.
+     */
+    public ListenableFuture<TestServer<T, S>> startAsync() {
+        return startAsync(DEFAULT_READINESS_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts the server on another thread, so that the test can meanwhile set up its fixtures and clients. The
+     * returned future completes once the connectors are open and the health checks of the service pass. It fails
+     * with the exception {@link #start()} throws, or, once the timeout has elapsed, with a
+     * {@link TimeoutException} naming the connectors and health checks which were not ready. Either way the
+     * future only fails once the server is stopped again: a {@link #start()} still running at the timeout is
+     * waited for first. The server must not be used otherwise until the future is done.
+     */
+    public ListenableFuture<TestServer<T, S>> startAsync(long timeout, TimeUnit unit) {
+        checkState(!isRunning(), "The server is already running");
+        final SettableFuture<TestServer<T, S>> ready = SettableFuture.create();
+        final long timeoutMillis = unit.toMillis(timeout);
+        final AtomicReference<List<String>> notReady =
+                new AtomicReference<List<String>>(ImmutableList.of("start() has not returned"));
+        final AtomicReference<TimeoutException> timedOut = new AtomicReference<>();
+        final Future<?> timer = READINESS_TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // reported by the starting thread, which may still be in start()
+                timedOut.set(new TimeoutException(getTimeline().getServiceName() + " was not ready within "
+                        + timeoutMillis + " ms: " + Joiner.on(", ").join(notReady.get())));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        ASYNC_STARTER.execute(new Runnable() {
+            @Override
+            public void run() {
+                Throwable failure;
+                try {
+                    start();
+                    List<String> failures = serviceLifecycleWrapper.getServerCommand().getReadinessFailures();
+                    while (!failures.isEmpty() && timedOut.get() == null && !ready.isDone()) {
+                        notReady.set(failures);
+                        Thread.sleep(READINESS_POLL_MILLIS);
+                        failures = serviceLifecycleWrapper.getServerCommand().getReadinessFailures();
+                    }
+                    if (failures.isEmpty() && timedOut.get() == null && ready.set(TestServer.this)) {
+                        timer.cancel(false);
+                        return;
+                    }
+                    failure = timedOut.get(); // or cancelled
+                } catch (Throwable e) {
+                    failure = e;
+                }
+                timer.cancel(false);
+                stopQuietly();
+                if (failure != null) {
+                    ready.setException(failure);
+                }
+            }
+        });
+        return ready;
+    }
+
+    private void stopQuietly() {
+        try {
+            if (isRunning()) {
+                stop();
+            }
+        } catch (Exception e) {
+            logger.warn("Unable to stop a server which did not get ready", e);
+        }
+    }
+
+    /**
+     * Stops the server and starts it again, keeping the supporting files, the parsed configuration, the Jetty
+     * thread pool and, if {@link #withEphemeralPorts()} is used, the ports.
+     */
+    public void restart() throws Exception {
+        if (!isRunning()) {
+            throw new IllegalStateException("Cannot restart a server that has not been started");
+        }
+        serviceLifecycleWrapper.restart();
+        clients.closeIdleConnections();
+    }
+
+    /**
+     * Resets the state of the running service, which must implement {@link Resettable}: a cheap alternative to
+     * {@link #restart()} between tests sharing a server. The duration is recorded as the
+     * {@link LifecycleTimeline#RESET} phase of the {@link #getTimeline() timeline}.
+     * @return how long the reset took, in nanoseconds
+     */
+    public long reset() throws Exception {
+        return serviceLifecycleWrapper.getServerCommand().reset();
+    }
+
     public boolean isRunning() {
         return wasRun && serviceLifecycleWrapper.isRunning();
     }
 
+    private Map<String, String> resolveSandbox(Map<String, String> overrides) {
+        if (sandbox == null) {
+            return overrides;
+        }
+        final Map<String, String> resolved = Maps.newLinkedHashMap();
+        for (Map.Entry<String, String> override : overrides.entrySet()) {
+            resolved.put(override.getKey(), override.getValue().replace(SANDBOX_PLACEHOLDER, sandbox.getDirectory().toString()));
+        }
+        return resolved;
+    }
+
     private void setUpFiles(String... additionalFiles) throws IOException {
+        if (sandbox != null) {
+            sandbox.stage(testClass, additionalFiles);
+            return;
+        }
         for (String filename : additionalFiles) {
             filesToBeDeleted.add(filename);
             prepareFileForTest(filename);
         }
     }
 
-    private void cleanUpFiles() {
+    private void cleanUpFiles() throws IOException {
+        if (sandbox != null) {
+            sandbox.delete();
+            return;
+        }
         for (String filename : filesToBeDeleted) {
             (new File(filename)).delete();
         }
+        filesToBeDeleted.clear();
     }
 
     public void stop() throws Exception {
         if (!isRunning()) {
             throw new IllegalStateException("Cannot stop a server that has not been started");
         }
-        serviceLifecycleWrapper.stop();
-        cleanUpFiles();
+        closeClients();
+        serviceLifecycleWrapper.stop(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                cleanUpFiles();
+                return null;
+            }
+        });
+    }
+
+    private synchronized void closeClients() {
+        clients.closeAll();
+        client = null;
+        if (inProcessClient != null) {
+            inProcessClient.destroy();
+            inProcessClient = null;
+        }
+    }
+
+    /**
+     * @return the URI the service is served at, e.g., http://localhost:20190/
+     */
+    public URI getBaseUri() {
+        return serviceLifecycleWrapper.getServerCommand().getBaseUri();
+    }
+
+    /**
+     * @return the URI the admin servlet is served at, e.g., http://localhost:20191/
+     */
+    public URI getAdminUri() {
+        return serviceLifecycleWrapper.getServerCommand().getAdminUri();
+    }
+
+    /**
+     * @return the durations of the phases of the last start of the server and of the stop that followed it
+     */
+    public LifecycleTimeline getTimeline() {
+        return serviceLifecycleWrapper.getServerCommand().getTimeline();
+    }
+
+    /**
+     * @return the metrics, MBeans and threads the last stop left behind, see {@link LeakReport}
+     */
+    public LeakReport getLeakReport() {
+        return serviceLifecycleWrapper.getServerCommand().getLeakReport();
     }
 
     public S getServiceUnderTest() {
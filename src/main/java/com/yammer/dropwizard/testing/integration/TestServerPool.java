@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.yammer.dropwizard.Service;
+import com.yammer.dropwizard.config.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Hands out running {@link TestServer}s shared by all the tests asking for an identical setup, i.e., the same
+ * service class, the same config file content and the same supporting files. The users of a server are counted
+ * and the server is stopped once the last one releases it. The default pool keeps unused servers running until
+ * the JVM exits, so that test classes run one after another reuse the same server.
+ *
+ * Since the server is shared, tests must not stop it themselves and should not rely on state left behind by
+ * other tests.
+ */
+public class TestServerPool {
+    private static final Logger logger = LoggerFactory.getLogger(TestServerPool.class);
+    private static final TestServerPool DEFAULT_POOL = new TestServerPool(false);
+
+    private final Map<String, PooledServer> servers = Maps.newHashMap();
+    private final boolean stopUnusedServers;
+    private boolean shutdownHookRegistered = false;
+
+    /**
+     * @param stopUnusedServers if true the server is stopped as soon as the last user releases it, otherwise
+     *                          it is kept running until the JVM exits
+     */
+    public TestServerPool(boolean stopUnusedServers) {
+        this.stopUnusedServers = stopUnusedServers;
+    }
+
+    /**
+     * @return the JVM wide pool, which keeps unused servers running until the JVM exits
+     */
+    public static TestServerPool getDefault() {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Returns a running server for the given setup, starting one if none is available. The arguments are
+     * the same as for {@link TestServer#create(Class, com.yammer.dropwizard.Service, String, String...)};
+     * the service instance is only used if a new server has to be started.
+     */
+    public <T extends Configuration, S extends Service<T>> TestServer<T, S>
+    acquire(Class<?> testClass, S serviceUnderTest, String configFile, String... additionalFiles) throws Exception {
+        return acquire(testClass, serviceUnderTest, false, configFile, additionalFiles);
+    }
+
+    /**
+     * As {@link #acquire(Class, com.yammer.dropwizard.Service, String, String...)}, optionally binding the
+     * server to ephemeral ports, see {@link TestServer#withEphemeralPorts()}.
+     */
+    public <T extends Configuration, S extends Service<T>> TestServer<T, S>
+    acquire(Class<?> testClass, S serviceUnderTest, boolean ephemeralPorts, String configFile,
+            String... additionalFiles) throws Exception {
+        checkNotNull(serviceUnderTest);
+        final String key = key(testClass, serviceUnderTest.getClass(), ephemeralPorts, configFile, additionalFiles);
+        final PooledServer pooledServer;
+        synchronized (this) {
+            registerShutdownHook();
+            if (!servers.containsKey(key)) {
+                servers.put(key, new PooledServer());
+            }
+            pooledServer = servers.get(key);
+        }
+        return pooledServer.acquire(testClass, serviceUnderTest, ephemeralPorts, configFile, additionalFiles);
+    }
+
+    /**
+     * Gives back a server obtained from {@link #acquire(Class, com.yammer.dropwizard.Service, String, String...)}.
+     */
+    public void release(TestServer<?, ?> server) throws Exception {
+        checkNotNull(server);
+        final List<PooledServer> pooledServers;
+        synchronized (this) {
+            pooledServers = Lists.newArrayList(servers.values());
+        }
+        for (PooledServer pooledServer : pooledServers) {
+            if (pooledServer.release(server, stopUnusedServers)) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("The server has not been acquired from this pool");
+    }
+
+    /**
+     * Stops all the servers in the pool, regardless of their users.
+     */
+    public void stopAll() {
+        final List<PooledServer> pooledServers;
+        synchronized (this) {
+            pooledServers = Lists.newArrayList(servers.values());
+        }
+        for (PooledServer pooledServer : pooledServers) {
+            pooledServer.stop();
+        }
+    }
+
+    private void registerShutdownHook() {
+        if (!shutdownHookRegistered) {
+            Runtime.getRuntime().addShutdownHook(new Thread("test-server-pool-shutdown") {
+                @Override
+                public void run() {
+                    stopAll();
+                }
+            });
+            shutdownHookRegistered = true;
+        }
+    }
+
+    private static String key(Class<?> testClass, Class<?> serviceClass, boolean ephemeralPorts, String configFile,
+                              String... additionalFiles) throws IOException {
+        checkNotNull(testClass);
+        checkNotNull(configFile);
+        final Hasher hasher = Hashing.sha1().newHasher()
+                .putBytes(Files.readAllBytes(new File(configFile).toPath()));
+        for (String filename : additionalFiles) {
+            try (InputStream fileInputStream = testClass.getResourceAsStream(filename)) {
+                checkArgument(fileInputStream != null, "Supporting file %s not found", filename);
+                hasher.putUnencodedChars(filename).putBytes(ByteStreams.toByteArray(fileInputStream));
+            }
+        }
+        return serviceClass.getName() + ":" + ephemeralPorts + ":" + hasher.hash();
+    }
+
+    private static final class PooledServer {
+        private TestServer<?, ?> server;
+        private int users = 0;
+
+        synchronized <T extends Configuration, S extends Service<T>> TestServer<T, S>
+        acquire(Class<?> testClass, S serviceUnderTest, boolean ephemeralPorts, String configFile,
+                String... additionalFiles) throws Exception {
+            if (server != null && !server.isRunning()) {
+                server.start(); // stopped behind the pool's back, warm start it again; its holders still hold it
+            }
+            if (server == null) {
+                final TestServer<T, S> newServer = TestServer.create(testClass, serviceUnderTest, configFile,
+                        additionalFiles);
+                if (ephemeralPorts) {
+                    newServer.withEphemeralPorts();
+                }
+                newServer.start();
+                server = newServer;
+                users = 0;
+            }
+            users++;
+            @SuppressWarnings("unchecked")
+            final TestServer<T, S> pooled = (TestServer<T, S>) server;
+            return pooled;
+        }
+
+        synchronized boolean release(TestServer<?, ?> released, boolean stopUnused) throws Exception {
+            if (server != released) {
+                return false;
+            }
+            users--;
+            if (users <= 0 && stopUnused) {
+                stopServer();
+            }
+            return true;
+        }
+
+        synchronized void stop() {
+            try {
+                stopServer();
+            } catch (Exception e) {
+                logger.warn("Unable to stop pooled server", e);
+            }
+        }
+
+        private void stopServer() throws Exception {
+            users = 0;
+            if (server != null && server.isRunning()) {
+                server.stop();
+            }
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.yammer.dropwizard.Service;
+import com.yammer.dropwizard.config.Configuration;
+import org.junit.rules.ExternalResource;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A JUnit rule which acquires a server from a {@link TestServerPool} before the test (or test class, when used
+ * as a {@code @ClassRule}) and releases it afterwards:
+ * <pre>
+ * &#64;ClassRule
+ * public static final TestServerRule&lt;ExampleConfiguration, ExampleService&gt; SERVER =
+ *         new TestServerRule&lt;&gt;(ExampleTest.class, new ExampleService(), CONFIG_FILE, "value.txt");
+ * </pre>
+ * @param <T> configuration type
+ * @param <S> service type
+ */
+public class TestServerRule<T extends Configuration, S extends Service<T>> extends ExternalResource {
+    private final TestServerPool pool;
+    private final Class<?> testClass;
+    private final S serviceUnderTest;
+    private final String configFile;
+    private final String[] additionalFiles;
+    private boolean ephemeralPorts = false;
+    private TestServer<T, S> server;
+
+    /**
+     * Uses the {@link TestServerPool#getDefault() default pool}, see
+     * {@link TestServerPool#acquire(Class, com.yammer.dropwizard.Service, String, String...)} for the arguments.
+     */
+    public TestServerRule(Class<?> testClass, S serviceUnderTest, String configFile, String... additionalFiles) {
+        this(TestServerPool.getDefault(), testClass, serviceUnderTest, configFile, additionalFiles);
+    }
+
+    public TestServerRule(TestServerPool pool, Class<?> testClass, S serviceUnderTest, String configFile,
+                          String... additionalFiles) {
+        this.pool = checkNotNull(pool);
+        this.testClass = checkNotNull(testClass);
+        this.serviceUnderTest = checkNotNull(serviceUnderTest);
+        this.configFile = checkNotNull(configFile);
+        this.additionalFiles = Arrays.copyOf(additionalFiles, additionalFiles.length);
+    }
+
+    /**
+     * Asks the pool for a server bound to ephemeral ports, see {@link TestServer#withEphemeralPorts()}.
+     * @return this rule
+     */
+    public TestServerRule<T, S> withEphemeralPorts() {
+        this.ephemeralPorts = true;
+        return this;
+    }
+
+    @Override
+    protected void before() throws Throwable {
+        server = pool.acquire(testClass, serviceUnderTest, ephemeralPorts, configFile, additionalFiles);
+    }
+
+    @Override
+    protected void after() {
+        if (server != null) {
+            try {
+                pool.release(server);
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to release the test server", e);
+            } finally {
+                server = null;
+            }
+        }
+    }
+
+    /**
+     * @return the server acquired for the currently running test
+     */
+    public TestServer<T, S> getServer() {
+        checkState(server != null, "The server is only available while the rule is applied");
+        return server;
+    }
+}
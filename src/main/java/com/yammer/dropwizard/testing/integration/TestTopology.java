@@ -0,0 +1,365 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.yammer.dropwizard.Service;
+import com.yammer.dropwizard.config.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Several services started as one, for tests of services talking to each other. Each service is a
+ * {@link TestServer} with {@link TestServer#withEphemeralPorts() ephemeral ports}, and optionally a
+ * {@link #withSandbox(String) sandbox} of its own. Services which do not depend on each other are started
+ * in parallel; a service is started once the services it depends on are started and report healthy, with their
+ * actual base URIs injected into its configuration. The services are stopped in the reverse order, again in
+ * parallel where possible, so the topology starts and stops in the time of its longest dependency chain.
+ * <pre>
+ * topology = TestTopology.create(getClass())
+ *         .withService("users", new UsersService(), "users.yml")
+ *         .withService("orders", new OrdersService(), "orders.yml")
+ *         .withDependency("orders", "users", "usersUri")
+ *         .withSandbox("orders");
+ * topology.start();
+ * </pre>
+ */
+public class TestTopology {
+    private static final Logger logger = LoggerFactory.getLogger(TestTopology.class);
+    private static final long DEFAULT_HEALTH_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private final Class<?> testClass;
+    private final Map<String, Node> nodes = Maps.newLinkedHashMap();
+    private long healthTimeoutMillis = DEFAULT_HEALTH_TIMEOUT_MILLIS;
+    private ExecutorService executor;
+
+    private TestTopology(Class<?> testClass) {
+        this.testClass = checkNotNull(testClass);
+    }
+
+    /**
+     * @param testClass the class of the test, whose resources hold the supporting files
+     */
+    public static TestTopology create(Class<?> testClass) {
+        return new TestTopology(testClass);
+    }
+
+    /**
+     * Adds a service, see {@link TestServer#create(Class, Service, String, String...)}.
+     * @param name the name the service is referred to by in the dependencies
+     */
+    public TestTopology withService(String name, Service<? extends Configuration> service, String configFile,
+                                    String... additionalFiles) {
+        return withService(name, service, configFile, ImmutableMap.<String, String>of(), additionalFiles);
+    }
+
+    /**
+     * Adds a service, see {@link TestServer#create(Class, Service, String, Map, String...)}. The overrides of a
+     * service {@link #withSandbox(String) in a sandbox} may refer to it through {@link TestServer#SANDBOX_PLACEHOLDER}.
+     * @param name the name the service is referred to by in the dependencies
+     */
+    public TestTopology withService(String name, Service<? extends Configuration> service, String configFile,
+                                    Map<String, String> configOverrides, String... additionalFiles) {
+        checkState(executor == null, "The topology has already been started");
+        checkArgument(!nodes.containsKey(name), "There already is a service named %s", name);
+        nodes.put(name, new Node(name, checkNotNull(service), checkNotNull(configFile), checkNotNull(configOverrides),
+                additionalFiles));
+        return this;
+    }
+
+    /**
+     * Runs the service in a {@link TestServer#withSandbox() sandbox} of its own, e.g. so that services staging
+     * supporting files of the same name do not overwrite each other's. The other services stage their supporting
+     * files in the working directory.
+     */
+    public TestTopology withSandbox(String name) {
+        checkState(executor == null, "The topology has already been started");
+        checkArgument(nodes.containsKey(name), "No service named %s", name);
+        nodes.get(name).sandbox = true;
+        return this;
+    }
+
+    /**
+     * Starts the downstream service only once the upstream service is started and healthy.
+     */
+    public TestTopology withDependency(String downstream, String upstream) {
+        return withDependency(downstream, upstream, null);
+    }
+
+    /**
+     * Starts the downstream service only once the upstream service is started and healthy, with the base URI of
+     * the upstream service, e.g. {@code http://localhost:40123/}, set at the given dotted path of its
+     * configuration.
+     * @param uriOverrideKey the path in the configuration of the downstream service, e.g. {@code users.uri}
+     */
+    public TestTopology withDependency(String downstream, String upstream, String uriOverrideKey) {
+        checkState(executor == null, "The topology has already been started");
+        checkArgument(nodes.containsKey(downstream), "No service named %s", downstream);
+        checkArgument(nodes.containsKey(upstream), "No service named %s", upstream);
+        checkArgument(!dependsOn(upstream, downstream), "%s already depends on %s", upstream, downstream);
+        nodes.get(downstream).upstreams.put(upstream, uriOverrideKey);
+        return this;
+    }
+
+    /**
+     * @param timeout how long a service may take to start and report healthy, 30 seconds by default, see
+     *                {@link TestServer#startAsync(long, TimeUnit)}
+     */
+    public TestTopology withHealthTimeout(long timeout, TimeUnit unit) {
+        this.healthTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Starts all the services. If one fails to start, those already started are stopped.
+     */
+    public synchronized void start() throws Exception {
+        checkState(executor == null, "The topology has already been started");
+        checkState(!nodes.isEmpty(), "The topology has no services");
+        executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("test-topology-%d").build());
+        final Map<String, Future<TestServer<?, ?>>> started = Maps.newHashMap();
+        for (String name : startOrder()) {
+            final Node node = nodes.get(name);
+            final Map<String, Future<TestServer<?, ?>>> upstreams = Maps.newHashMap();
+            for (String upstream : node.upstreams.keySet()) {
+                upstreams.put(upstream, started.get(upstream));
+            }
+            started.put(name, executor.submit(new Callable<TestServer<?, ?>>() {
+                @Override
+                public TestServer<?, ?> call() throws Exception {
+                    return node.start(awaitAll(upstreams));
+                }
+            }));
+        }
+        try {
+            awaitAll(started);
+        } catch (Exception e) {
+            awaitCompletion(started.values()); // the services starting concurrently are stopped too
+            stopStarted();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops all the services, each once the services depending on it are stopped.
+     */
+    public synchronized void stop() throws Exception {
+        checkState(executor != null, "The topology has not been started");
+        final Exception failure = stopStarted();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        if (executor == null) {
+            return false;
+        }
+        for (Node node : nodes.values()) {
+            if (node.server == null || !node.server.isRunning()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the server of the given service, once the topology has been started
+     */
+    public TestServer<?, ?> getServer(String name) {
+        checkArgument(nodes.containsKey(name), "No service named %s", name);
+        final TestServer<?, ?> server = nodes.get(name).server;
+        checkState(server != null, "%s has not been started", name);
+        return server;
+    }
+
+    public URI getBaseUri(String name) {
+        return getServer(name).getBaseUri();
+    }
+
+    /**
+     * @return the first failure, null if all the started services stopped
+     */
+    private Exception stopStarted() throws InterruptedException {
+        final Map<String, Future<Void>> stopped = Maps.newHashMap();
+        final List<String> stopOrder = Lists.reverse(startOrder());
+        for (final String name : stopOrder) {
+            final Map<String, Future<Void>> downstreams = Maps.newHashMap();
+            for (Node node : nodes.values()) {
+                if (node.upstreams.containsKey(name)) {
+                    downstreams.put(node.name, stopped.get(node.name));
+                }
+            }
+            stopped.put(name, executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        awaitAll(downstreams);
+                    } finally {
+                        nodes.get(name).stop(); // even if a downstream failed to stop
+                    }
+                    return null;
+                }
+            }));
+        }
+        Exception failure = null;
+        for (String name : stopOrder) {
+            try {
+                stopped.get(name).get();
+            } catch (ExecutionException e) {
+                logger.warn("Unable to stop {}", name, e.getCause());
+                if (failure == null) {
+                    failure = asException(e.getCause());
+                }
+            }
+        }
+        executor.shutdown();
+        executor = null;
+        return failure;
+    }
+
+    /**
+     * @return the names of the services, each after the services it depends on
+     */
+    private List<String> startOrder() {
+        final List<String> order = Lists.newArrayList();
+        for (String name : nodes.keySet()) {
+            addAfterUpstreams(name, order);
+        }
+        return order;
+    }
+
+    private void addAfterUpstreams(String name, List<String> order) {
+        if (order.contains(name)) {
+            return;
+        }
+        for (String upstream : nodes.get(name).upstreams.keySet()) {
+            addAfterUpstreams(upstream, order);
+        }
+        order.add(name);
+    }
+
+    private boolean dependsOn(String downstream, String upstream) {
+        if (downstream.equals(upstream)) {
+            return true;
+        }
+        for (String next : nodes.get(downstream).upstreams.keySet()) {
+            if (dependsOn(next, upstream)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void awaitCompletion(Iterable<? extends Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ignored) {
+                // reported by awaitAll
+            }
+        }
+    }
+
+    private static <V> Map<String, V> awaitAll(Map<String, Future<V>> futures) throws Exception {
+        final Map<String, V> values = Maps.newHashMap();
+        for (Map.Entry<String, Future<V>> future : futures.entrySet()) {
+            try {
+                values.put(future.getKey(), future.getValue().get());
+            } catch (ExecutionException e) {
+                throw asException(e.getCause());
+            }
+        }
+        return values;
+    }
+
+    private static Exception asException(Throwable throwable) {
+        Throwables.propagateIfInstanceOf(throwable, Error.class);
+        return throwable instanceof Exception ? (Exception) throwable : new RuntimeException(throwable);
+    }
+
+    private final class Node {
+        private final String name;
+        private final Service<? extends Configuration> service;
+        private final String configFile;
+        private final Map<String, String> configOverrides;
+        private final String[] additionalFiles;
+        // the upstream services and the keys their base URIs are injected at, null for none
+        private final Map<String, String> upstreams = Maps.newLinkedHashMap();
+        private boolean sandbox = false;
+        private volatile TestServer<?, ?> server;
+
+        private Node(String name, Service<? extends Configuration> service, String configFile,
+                     Map<String, String> configOverrides, String... additionalFiles) {
+            this.name = name;
+            this.service = service;
+            this.configFile = configFile;
+            this.configOverrides = ImmutableMap.copyOf(configOverrides);
+            this.additionalFiles = Arrays.copyOf(additionalFiles, additionalFiles.length);
+        }
+
+        private TestServer<?, ?> start(Map<String, TestServer<?, ?>> upstreamServers) throws Exception {
+            final Map<String, String> overrides = Maps.newLinkedHashMap(configOverrides);
+            for (Map.Entry<String, String> upstream : upstreams.entrySet()) {
+                if (upstream.getValue() != null) {
+                    overrides.put(upstream.getValue(), upstreamServers.get(upstream.getKey()).getBaseUri().toString());
+                }
+            }
+            final long start = System.nanoTime();
+            server = createServer(service, overrides);
+            try {
+                server.startAsync(healthTimeoutMillis, TimeUnit.MILLISECONDS).get();
+            } catch (ExecutionException e) {
+                throw asException(e.getCause());
+            }
+            logger.info("{} started in {} ms", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return server;
+        }
+
+        private <T extends Configuration> TestServer<T, Service<T>> createServer(Service<T> service,
+                                                                                 Map<String, String> overrides)
+                throws Exception {
+            final TestServer<T, Service<T>> server = TestServer.create(testClass, service, configFile, overrides,
+                    additionalFiles).withEphemeralPorts();
+            return sandbox ? server.withSandbox() : server;
+        }
+
+        private void stop() throws Exception {
+            if (server != null && server.isRunning()) {
+                server.stop();
+            }
+        }
+    }
+}
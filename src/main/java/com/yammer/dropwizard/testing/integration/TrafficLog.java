@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Reads the exchanges written by a {@link TrafficRecorder}, in the order they started, streaming them from
+ * the file rather than loading it whole. A record cut short, e.g. by a JVM which exited while writing it, ends
+ * the log: a length prefix is checked against what is left of the file before anything is allocated for it.
+ *
+ * The log is a header ({@link #MAGIC} and {@link #VERSION}) followed by length prefixed records holding the
+ * timing, the method, URI, headers and body of the request, and the status, content type and body of the
+ * response.
+ */
+public final class TrafficLog extends AbstractIterator<RecordedExchange> implements Closeable {
+    /* package */ static final int MAGIC = 0x44575452; // "DWTR"
+    /* package */ static final int VERSION = 1;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int HEADER_SIZE = 8;
+    private final DataInputStream in;
+    private long remaining;
+
+    private TrafficLog(DataInputStream in, long remaining) {
+        this.in = in;
+        this.remaining = remaining;
+    }
+
+    /**
+     * @throws IOException if the file is not a traffic log
+     */
+    public static TrafficLog open(Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel), READ_BUFFER_SIZE));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a traffic log of version " + VERSION);
+            }
+            return new TrafficLog(in, channel.size() - HEADER_SIZE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return all the exchanges in the log, for logs small enough to be held in memory
+     */
+    public static ImmutableList<RecordedExchange> readAll(Path file) throws IOException {
+        try (TrafficLog log = open(file)) {
+            return ImmutableList.copyOf(log);
+        }
+    }
+
+    @Override
+    protected RecordedExchange computeNext() {
+        try {
+            if (remaining < 4) {
+                return endOfLog();
+            }
+            final int length = in.readInt();
+            remaining -= 4;
+            if (length < 0 || length > remaining) {
+                return endOfLog(); // cut short
+            }
+            final byte[] record = new byte[length];
+            in.readFully(record);
+            remaining -= length;
+            return decode(new DataInputStream(new ByteArrayInputStream(record)));
+        } catch (EOFException e) {
+            return endOfLog();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read the traffic log", e);
+        }
+    }
+
+    private RecordedExchange endOfLog() {
+        try {
+            close();
+        } catch (IOException ignored) {
+            // all read
+        }
+        return endOfData();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /* package */ static byte[] encode(RecordedExchange exchange) {
+        final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeLong(exchange.getOffsetNanos());
+        out.writeLong(exchange.getLatencyNanos());
+        out.writeUTF(exchange.getMethod());
+        out.writeUTF(exchange.getUri());
+        out.writeInt(exchange.getRequestHeaders().size());
+        for (Map.Entry<String, String> header : exchange.getRequestHeaders().entries()) {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        writeBytes(out, exchange.requestBody());
+        out.writeInt(exchange.getStatus());
+        out.writeBoolean(exchange.getContentType() != null);
+        if (exchange.getContentType() != null) {
+            out.writeUTF(exchange.getContentType());
+        }
+        writeBytes(out, exchange.responseBody());
+        return out.toByteArray();
+    }
+
+    private static RecordedExchange decode(DataInputStream in) throws IOException {
+        final long offsetNanos = in.readLong();
+        final long latencyNanos = in.readLong();
+        final String method = in.readUTF();
+        final String uri = in.readUTF();
+        final int headerCount = in.readInt();
+        final ImmutableListMultimap.Builder<String, String> headers = ImmutableListMultimap.builder();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(in.readUTF(), in.readUTF());
+        }
+        final byte[] requestBody = readBytes(in);
+        final int status = in.readInt();
+        final String contentType = in.readBoolean() ? in.readUTF() : null;
+        final byte[] responseBody = readBytes(in);
+        return new RecordedExchange(offsetNanos, latencyNanos, method, uri, headers.build(), requestBody, status,
+                contentType, responseBody);
+    }
+
+    private static void writeBytes(ByteArrayDataOutput out, byte[] bytes) {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Corrupt record: a body of " + length + " bytes in " + in.available());
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,405 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.yammer.dropwizard.config.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Records every request served by the service, and its response, to an append-only {@link TrafficLog} on
+ * disk, to be replayed against another server by a {@link TrafficReplayer}. The request threads hand the encoded
+ * records to a single writer thread, through a bounded queue, so that they neither wait for the disk nor for each
+ * other; the writer puts them through a direct buffer to a file channel, so the recording is not kept in the heap.
+ * The buffer is flushed when the server stops, see {@link #flush()}. The recorder replaces an existing file, then
+ * appends to it across restarts.
+ *
+ * The records are written in the order the requests started, which is the order they are replayed in: the writer
+ * holds a record back until the requests which started before it have completed.
+ *
+ * Only the request body the service reads through the servlet API is recorded; the admin connector is not
+ * recorded.
+ */
+public class TrafficRecorder implements Filter, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TrafficRecorder.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** the records waiting for the writer; a full queue holds the request threads back rather than the heap */
+    private static final int QUEUE_CAPACITY = 1024;
+    private final Path file;
+    private final long originNanos = System.nanoTime();
+    private final AtomicLong records = new AtomicLong();
+    private final Object startLock = new Object();
+    private final ThreadPoolExecutor writer;
+    private long started = 0;
+    // the state below is only touched by the writer thread
+    private final SortedMap<Long, byte[]> heldBack = Maps.newTreeMap();
+    private long nextSequence = 0;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private FileChannel channel;
+    private boolean truncated = false;
+
+    public TrafficRecorder(Path file) {
+        this.file = checkNotNull(file);
+        this.writer = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("traffic-recorder-%d").build(),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+                        try {
+                            executor.getQueue().put(task);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException(e);
+                        }
+                    }
+                });
+        writer.allowCoreThreadTimeOut(true);
+    }
+
+    /* package */ void install(Environment environment) {
+        environment.addFilter(this, "/*");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of exchanges recorded so far, including those not flushed yet
+     */
+    public long getRecordCount() {
+        return records.get();
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        final long sequence;
+        final long start;
+        synchronized (startLock) { // so that the sequence and the offsets of the requests agree
+            sequence = started++;
+            start = System.nanoTime();
+        }
+        final RecordingRequest recordingRequest = new RecordingRequest((HttpServletRequest) request);
+        final RecordingResponse recordingResponse = new RecordingResponse((HttpServletResponse) response);
+        try {
+            chain.doFilter(recordingRequest, recordingResponse);
+        } finally {
+            recordingResponse.flushWriter();
+            final long latencyNanos = System.nanoTime() - start;
+            append(sequence, recordingRequest.toExchange(start - originNanos, latencyNanos, recordingResponse));
+        }
+    }
+
+    /**
+     * Writes the buffered records to the file and closes it. Called when the server stops.
+     */
+    @Override
+    public void destroy() {
+        try {
+            close();
+        } catch (IOException e) {
+            logger.warn("Unable to close the traffic log {}", file, e);
+        }
+    }
+
+    /**
+     * Writes the records recorded so far to the file, e.g. to replay them while the server still runs, but for
+     * those held back by a request still in flight which started before them.
+     */
+    public void flush() throws IOException {
+        runOnWriter(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                if (channel != null) {
+                    writeBuffer();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        runOnWriter(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                for (Map.Entry<Long, byte[]> record : heldBack.entrySet()) {
+                    writeRecord(record.getValue());
+                    nextSequence = record.getKey() + 1;
+                }
+                heldBack.clear();
+                if (channel != null) {
+                    try {
+                        writeBuffer();
+                    } finally {
+                        channel.close();
+                        channel = null;
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @param sequence the position of the request in the order the requests started
+     */
+    /* package */ void append(final long sequence, RecordedExchange exchange) {
+        final byte[] record = TrafficLog.encode(exchange);
+        records.incrementAndGet();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                heldBack.put(sequence, record);
+                try {
+                    // a request which outlived a close() is written as soon as it completes
+                    while (!heldBack.isEmpty() && heldBack.firstKey() <= nextSequence) {
+                        final long first = heldBack.firstKey();
+                        writeRecord(heldBack.remove(first));
+                        nextSequence = Math.max(nextSequence, first + 1);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Unable to record a request to {}", file, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the task once the records queued before it have been written, and waits for it.
+     */
+    private void runOnWriter(Callable<Void> task) throws IOException {
+        try {
+            writer.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the traffic log " + file);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private void writeRecord(byte[] record) throws IOException {
+        if (channel == null) {
+            channel = truncated
+                    ? FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                    : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+            truncated = true;
+            if (channel.size() == 0) {
+                buffer.putInt(TrafficLog.MAGIC).putInt(TrafficLog.VERSION);
+            }
+        }
+        if (buffer.remaining() < record.length + 4) {
+            writeBuffer();
+        }
+        if (record.length + 4 > buffer.capacity()) {
+            write((ByteBuffer) ByteBuffer.allocate(record.length + 4).putInt(record.length).put(record).flip());
+        } else {
+            buffer.putInt(record.length).put(record);
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        try {
+            write(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private static final class RecordingRequest extends HttpServletRequestWrapper {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private ServletInputStream inputStream;
+        private BufferedReader reader;
+
+        private RecordingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                final ServletInputStream delegate = super.getInputStream();
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        final int b = delegate.read();
+                        if (b >= 0) {
+                            body.write(b);
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] bytes, int offset, int length) throws IOException {
+                        final int read = delegate.read(bytes, offset, length);
+                        if (read > 0) {
+                            body.write(bytes, offset, read);
+                        }
+                        return read;
+                    }
+                };
+            }
+            return inputStream;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (reader == null) {
+                final String encoding = getCharacterEncoding();
+                reader = new BufferedReader(new InputStreamReader(getInputStream(),
+                        encoding == null ? Charsets.ISO_8859_1.name() : encoding));
+            }
+            return reader;
+        }
+
+        private RecordedExchange toExchange(long offsetNanos, long latencyNanos, RecordingResponse response) {
+            final ImmutableListMultimap.Builder<String, String> headers = ImmutableListMultimap.builder();
+            for (Enumeration<String> names = getHeaderNames(); names.hasMoreElements(); ) {
+                final String name = names.nextElement();
+                for (Enumeration<String> values = getHeaders(name); values.hasMoreElements(); ) {
+                    headers.put(name, values.nextElement());
+                }
+            }
+            final String uri = getQueryString() == null ? getRequestURI() : getRequestURI() + '?' + getQueryString();
+            return new RecordedExchange(offsetNanos, latencyNanos, getMethod(), uri, headers.build(),
+                    body.toByteArray(), response.getStatus(), response.getContentType(), response.body.toByteArray());
+        }
+    }
+
+    private static final class RecordingResponse extends HttpServletResponseWrapper {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private RecordingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                final ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        body.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        delegate.write(bytes, offset, length);
+                        body.write(bytes, offset, length);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flushWriter();
+            super.flushBuffer();
+        }
+
+        private void flushWriter() {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import org.HdrHistogram.Histogram;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Replays a {@link TrafficLog} recorded by a {@link TrafficRecorder} against a server, e.g. the same scenario
+ * against every build, and compares the responses and the latencies with the recorded ones:
+ * <pre>
+ * ReplayResult result = TrafficReplayer.create(recording, testServer).atSpeed(2).replay();
+ * assertThat(result.getMismatches(), is(empty()));
+ * </pre>
+ * The requests are issued at their recorded offsets, optionally sped up, or back to back by a number of workers
+ * with {@link #atMaxConcurrency(int)}. As in {@link LoadDriver}, a timed request's latency is measured from when
+ * it was due. The statuses of the responses are compared, and so are the bodies of the non-error responses,
+ * since error pages may be rendered outside of the recorded servlet.
+ */
+public class TrafficReplayer {
+    public static final int DEFAULT_WORKERS = 16;
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final int REPORTED_MISMATCHES = 100;
+    // set by the client for the new connection, or would make the server compress the response
+    private static final Set<String> SKIPPED_HEADERS = ImmutableSet.of("host", "content-length", "connection",
+            "transfer-encoding", "accept-encoding");
+    private final Path log;
+    private final Client client;
+    private final URI baseUri;
+    private double speed = 1;
+    private int workers = DEFAULT_WORKERS;
+    private boolean compareBodies = true;
+
+    private TrafficReplayer(Path log, Client client, URI baseUri) {
+        this.log = checkNotNull(log);
+        this.client = checkNotNull(client);
+        this.baseUri = checkNotNull(baseUri);
+    }
+
+    /**
+     * Replays against the given server, which must already be started, with its {@link TestServer#getClient()
+     * pooled client}.
+     */
+    public static TrafficReplayer create(Path log, TestServer<?, ?> server) {
+        return new TrafficReplayer(log, server.getClient(), server.getBaseUri());
+    }
+
+    public static TrafficReplayer create(Path log, Client client, URI baseUri) {
+        return new TrafficReplayer(log, client, baseUri);
+    }
+
+    /**
+     * Issues the requests at their recorded offsets, the default.
+     * @return this replayer
+     */
+    public TrafficReplayer atOriginalTiming() {
+        return atSpeed(1);
+    }
+
+    /**
+     * Issues the requests at their recorded offsets divided by the given factor, e.g. 2 for twice the rate.
+     * @return this replayer
+     */
+    public TrafficReplayer atSpeed(double factor) {
+        checkArgument(factor > 0, "The speed must be positive");
+        this.speed = factor;
+        return this;
+    }
+
+    /**
+     * Issues the requests in their recorded order as fast as the given number of workers can.
+     * @return this replayer
+     */
+    public TrafficReplayer atMaxConcurrency(int workers) {
+        this.speed = 0;
+        return withWorkers(workers);
+    }
+
+    /**
+     * @param workers the number of requests which may be in flight at once, {@link #DEFAULT_WORKERS} by default
+     * @return this replayer
+     */
+    public TrafficReplayer withWorkers(int workers) {
+        checkArgument(workers > 0, "At least one worker is needed");
+        this.workers = workers;
+        return this;
+    }
+
+    /**
+     * Compares the statuses of the responses only, e.g. for responses carrying timestamps.
+     * @return this replayer
+     */
+    public TrafficReplayer ignoringResponseBodies() {
+        this.compareBodies = false;
+        return this;
+    }
+
+    public ReplayResult replay() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(workers,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("traffic-replayer-%d").build());
+        final AtomicLong errors = new AtomicLong();
+        final AtomicReference<Throwable> firstError = new AtomicReference<>();
+        final AtomicLong mismatchCount = new AtomicLong();
+        final Queue<String> mismatches = new ConcurrentLinkedQueue<>();
+        try (final TrafficLog traffic = TrafficLog.open(log)) {
+            final ExchangeSource source = new ExchangeSource(traffic);
+            final long start = System.nanoTime();
+            final List<Future<Histogram[]>> results = Lists.newArrayList();
+            for (int i = 0; i < workers; i++) {
+                results.add(executor.submit(new Callable<Histogram[]>() {
+                    @Override
+                    public Histogram[] call() {
+                        final Histogram replayed = new Histogram(SIGNIFICANT_DIGITS);
+                        final Histogram recorded = new Histogram(SIGNIFICANT_DIGITS);
+                        RecordedExchange exchange;
+                        while ((exchange = source.next()) != null && !Thread.currentThread().isInterrupted()) {
+                            // a log not in start order, e.g. of an older recorder, sends the earlier requests at once
+                            final long scheduled = speed == 0 ? System.nanoTime() : start + (long) (
+                                    Math.max(0, exchange.getOffsetNanos() - source.firstOffsetNanos) / speed);
+                            LoadDriver.waitUntil(scheduled);
+                            recorded.recordValue(exchange.getLatencyNanos());
+                            try {
+                                final String mismatch = send(exchange);
+                                replayed.recordValue(System.nanoTime() - scheduled);
+                                if (mismatch != null && mismatchCount.incrementAndGet() <= REPORTED_MISMATCHES) {
+                                    mismatches.add(mismatch);
+                                }
+                            } catch (Exception e) {
+                                errors.incrementAndGet();
+                                firstError.compareAndSet(null, e);
+                            }
+                        }
+                        return new Histogram[]{replayed, recorded};
+                    }
+                }));
+            }
+            final Histogram replayed = new Histogram(SIGNIFICANT_DIGITS);
+            final Histogram recorded = new Histogram(SIGNIFICANT_DIGITS);
+            for (Future<Histogram[]> result : results) {
+                replayed.add(result.get()[0]);
+                recorded.add(result.get()[1]);
+            }
+            final long elapsedNanos = System.nanoTime() - start;
+            return new ReplayResult(
+                    new LoadResult(recorded, 0, source.getRecordedSpanNanos(), Optional.<Throwable>absent()),
+                    new LoadResult(replayed, errors.get(), elapsedNanos, Optional.fromNullable(firstError.get())),
+                    mismatchCount.get(), ImmutableList.copyOf(mismatches));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return how the response differs from the recorded one, or null if it does not
+     */
+    private String send(RecordedExchange exchange) throws Exception {
+        WebResource.Builder request = client.resource(baseUri.resolve(exchange.getUri())).getRequestBuilder();
+        for (Map.Entry<String, String> header : exchange.getRequestHeaders().entries()) {
+            if (!SKIPPED_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+                request = request.header(header.getKey(), header.getValue());
+            }
+        }
+        final ClientResponse response = exchange.requestBody().length == 0
+                ? request.method(exchange.getMethod(), ClientResponse.class)
+                : request.method(exchange.getMethod(), ClientResponse.class, exchange.requestBody());
+        try {
+            final byte[] body;
+            try (InputStream entity = response.getEntityInputStream()) {
+                body = entity == null ? new byte[0] : ByteStreams.toByteArray(entity);
+            }
+            final boolean bodiesDiffer = compareBodies && exchange.getStatus() < 400
+                    && !Arrays.equals(body, exchange.responseBody());
+            if (response.getStatus() != exchange.getStatus() || bodiesDiffer) {
+                return String.format("%s %s: recorded %d with %d bytes, replayed %d with %d bytes",
+                        exchange.getMethod(), exchange.getUri(), exchange.getStatus(), exchange.responseBody().length,
+                        response.getStatus(), body.length);
+            }
+            return null;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Hands the exchanges out to the workers in their recorded order, which is the order they started in, so the
+     * first one is the earliest and its offset the start of the schedule.
+     */
+    private static final class ExchangeSource {
+        private final TrafficLog traffic;
+        private volatile long firstOffsetNanos;
+        private long earliestOffsetNanos;
+        private long lastEndNanos;
+        private boolean started = false;
+
+        private ExchangeSource(TrafficLog traffic) {
+            this.traffic = traffic;
+        }
+
+        private synchronized RecordedExchange next() {
+            if (!traffic.hasNext()) {
+                return null;
+            }
+            final RecordedExchange exchange = traffic.next();
+            if (!started) {
+                firstOffsetNanos = exchange.getOffsetNanos();
+                earliestOffsetNanos = exchange.getOffsetNanos();
+                started = true;
+            }
+            earliestOffsetNanos = Math.min(earliestOffsetNanos, exchange.getOffsetNanos());
+            lastEndNanos = Math.max(lastEndNanos, exchange.getOffsetNanos() + exchange.getLatencyNanos());
+            return exchange;
+        }
+
+        private synchronized long getRecordedSpanNanos() {
+            return started ? lastEndNanos - earliestOffsetNanos : 0;
+        }
+    }
+}
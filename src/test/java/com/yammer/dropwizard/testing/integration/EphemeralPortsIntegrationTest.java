@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.sun.jersey.api.client.Client;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+
+public class EphemeralPortsIntegrationTest {
+    private static final String TEST_CONFIG = EphemeralPortsIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private static final String EXPECTED_VALUE = "expectedValue";
+    private TestServer<ExampleConfiguration, ExampleService> firstServer;
+    private TestServer<ExampleConfiguration, ExampleService> secondServer;
+
+    @Before
+    public void setup() throws Exception {
+        firstServer = TestServer.create(EphemeralPortsIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts();
+        secondServer = TestServer.create(EphemeralPortsIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts();
+        firstServer.start();
+        secondServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (TestServer<?, ?> server : new TestServer<?, ?>[]{firstServer, secondServer}) {
+            if (server.isRunning()) {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void two_servers_with_the_same_config_run_side_by_side() {
+        assertThat(firstServer.getBaseUri(), is(not(equalTo(secondServer.getBaseUri()))));
+        assertThat(getValue(firstServer), is(equalTo(EXPECTED_VALUE)));
+        assertThat(getValue(secondServer), is(equalTo(EXPECTED_VALUE)));
+    }
+
+    @Test
+    public void stopping_one_server_leaves_the_other_serving() throws Exception {
+        firstServer.stop();
+
+        assertThat(getValue(secondServer), is(equalTo(EXPECTED_VALUE)));
+    }
+
+    @Test
+    public void a_restarted_server_keeps_its_ports() throws Exception {
+        final URI baseUri = firstServer.getBaseUri();
+
+        firstServer.restart();
+
+        assertThat(firstServer.getBaseUri(), is(equalTo(baseUri)));
+        assertThat(getValue(firstServer), is(equalTo(EXPECTED_VALUE)));
+    }
+
+    @Test
+    public void a_server_started_again_after_a_restart_binds_to_free_ports() throws Exception {
+        firstServer.restart();
+        final URI restartedUri = firstServer.getBaseUri();
+        firstServer.stop();
+
+        try (ServerSocket taken = new ServerSocket(restartedUri.getPort())) {
+            firstServer.start();
+
+            assertThat(firstServer.getBaseUri().getPort(), is(not(equalTo(taken.getLocalPort()))));
+            assertThat(getValue(firstServer), is(equalTo(EXPECTED_VALUE)));
+        }
+    }
+
+    private static String getValue(TestServer<?, ?> server) {
+        return new ExampleClient(new Client(), server.getBaseUri().toString()).getValue();
+    }
+}
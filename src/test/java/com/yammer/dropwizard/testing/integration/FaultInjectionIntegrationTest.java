@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class FaultInjectionIntegrationTest {
+    private static final String TEST_CONFIG = FaultInjectionIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private FaultInjectingService<ExampleConfiguration> service;
+    private TestServer<ExampleConfiguration, FaultInjectingService<ExampleConfiguration>> testServer;
+
+    @Before
+    public void setup() throws Exception {
+        service = FaultInjectingService.create(new ExampleService());
+        testServer = TestServer.create(FaultInjectionIntegrationTest.class, service, TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts();
+        testServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @Test
+    public void latency_is_injected_until_the_rule_is_removed() throws Exception {
+        final FaultRule rule = service.getFaults().forPath("/").withLatency(LatencyDistribution.fixed(300, TimeUnit.MILLISECONDS));
+
+        assertThat(timeGetMillis() >= 300, is(true));
+        assertThat(rule.getRequestCount(), is(1L));
+
+        service.getFaults().remove("/");
+
+        assertThat(timeGetMillis() < 300, is(true));
+    }
+
+    @Test
+    public void the_longest_matching_prefix_applies() throws Exception {
+        service.getFaults().forPath("/").withErrorRate(1, 503);
+        service.getFaults().forPath("/healthy").withErrorRate(0, 503);
+
+        assertThat(testServer.resource("/").get(ClientResponse.class).getStatus(), is(503));
+        assertThat(testServer.resource("/healthy").get(ClientResponse.class).getStatus(), is(404));
+        assertThat(service.getFaults().forPath("/").getErrorCount(), is(1L));
+    }
+
+    @Test
+    public void connections_are_reset() throws Exception {
+        final FaultRule rule = service.getFaults().forPath("/").withResetRate(1);
+
+        try {
+            new Client().resource(testServer.getBaseUri()).get(String.class);
+            fail("The connection was not reset");
+        } catch (ClientHandlerException expected) {
+            assertThat(rule.getResetCount() >= 1, is(true));
+        }
+    }
+
+    @Test
+    public void responses_are_throttled() throws Exception {
+        service.getFaults().forPath("/").withBandwidth(50); // "expectedValue" is 13 bytes
+
+        assertThat(timeGetMillis() >= 200, is(true));
+    }
+
+    @Test
+    public void a_slow_tail_shows_in_the_tail_latency() throws Exception {
+        service.getFaults().forPath("/").withLatency(LatencyDistribution.uniform(1, 2, TimeUnit.MILLISECONDS)
+                .withTail(0.05, LatencyDistribution.fixed(100, TimeUnit.MILLISECONDS)));
+
+        final LoadResult result = LoadDriver.forGet(testServer, "/").closedLoop(4, 1, TimeUnit.SECONDS);
+
+        assertThat(result.getP50(TimeUnit.MILLISECONDS) < 100, is(true));
+        assertThat(result.getP99(TimeUnit.MILLISECONDS) >= 100, is(true));
+    }
+
+    private long timeGetMillis() {
+        final long start = System.nanoTime();
+        assertThat(testServer.resource("/").get(String.class), is(equalTo("expectedValue")));
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
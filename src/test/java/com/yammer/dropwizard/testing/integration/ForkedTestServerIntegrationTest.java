@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.sun.jersey.api.client.Client;
+import com.yammer.dropwizard.config.Environment;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ForkedTestServerIntegrationTest {
+    private static final String TEST_CONFIG = ForkedTestServerIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private static final ForkedJvmPool POOL = new ForkedJvmPool(1, ForkedJvmPool.DEFAULT_JVM_ARGUMENTS);
+    private ForkedTestServer testServer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (testServer != null && testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @AfterClass
+    public static void shutdownPool() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void the_service_runs_in_a_child_jvm() throws Exception {
+        testServer = ForkedTestServer.create(ForkedTestServerIntegrationTest.class, ExampleService.class, TEST_CONFIG, VALUE_FILE)
+                .withPool(POOL)
+                .withEphemeralPorts();
+        testServer.start();
+
+        assertThat(testServer.isRunning(), is(true));
+        assertThat(new ExampleClient(new Client(), testServer.getBaseUri().toString()).getValue(), is(equalTo("expectedValue")));
+        // staged in the directory of the child, not in the one of the test
+        assertThat(new File(VALUE_FILE).exists(), is(false));
+
+        testServer.stop();
+        assertThat(testServer.isRunning(), is(false));
+    }
+
+    @Test
+    public void a_resettable_service_is_reset_in_the_child_jvm() throws Exception {
+        testServer = ForkedTestServer.create(ForkedTestServerIntegrationTest.class, ResetIntegrationTest.ResettableService.class,
+                TEST_CONFIG, VALUE_FILE).withPool(POOL).withEphemeralPorts();
+        testServer.start();
+
+        assertThat(testServer.reset() > 0, is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void other_services_cannot_be_reset() throws Exception {
+        testServer = ForkedTestServer.create(ForkedTestServerIntegrationTest.class, ExampleService.class, TEST_CONFIG, VALUE_FILE)
+                .withPool(POOL)
+                .withEphemeralPorts();
+        testServer.start();
+
+        testServer.reset();
+    }
+
+    @Test
+    public void errors_longer_than_64k_are_reported_by_the_child_jvm() throws Exception {
+        testServer = ForkedTestServer.create(ForkedTestServerIntegrationTest.class, FailingService.class, TEST_CONFIG, VALUE_FILE)
+                .withPool(POOL)
+                .withEphemeralPorts();
+        try {
+            testServer.start();
+            fail("The service should have failed to start");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString(FailingService.MESSAGE));
+        }
+    }
+
+    @Test
+    public void a_child_jvm_which_exits_on_startup_fails_the_fork_at_once() throws Exception {
+        final long start = System.nanoTime();
+        try {
+            ForkedChild.fork(ImmutableList.of("-XX:+NoSuchOption"), TimeUnit.SECONDS.toMillis(60)).close();
+            fail("The child JVM should not have started");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("exited with code 1"));
+            assertThat(e.getMessage(), containsString("NoSuchOption"));
+        }
+        assertThat(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30), is(true));
+    }
+
+    public static class FailingService extends ExampleService {
+        private static final String MESSAGE = Strings.repeat("\u00e9", 40000); // 80000 bytes in UTF-8
+
+        @Override
+        public void run(ExampleConfiguration configuration, Environment environment) throws Exception {
+            throw new IllegalStateException(MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class GracefulStopIntegrationTest {
+    private static final String TEST_CONFIG = GracefulStopIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private final ExecutorService clients = Executors.newSingleThreadExecutor();
+    private FaultInjectingService<ExampleConfiguration> service;
+    private TestServer<ExampleConfiguration, FaultInjectingService<ExampleConfiguration>> testServer;
+
+    @Before
+    public void setup() throws Exception {
+        service = FaultInjectingService.create(new ExampleService());
+        testServer = TestServer.create(GracefulStopIntegrationTest.class, service, TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        clients.shutdownNow();
+        if (testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @Test
+    public void in_flight_requests_complete_before_the_server_stops() throws Exception {
+        testServer.withDrainTimeout(5, TimeUnit.SECONDS).start();
+        final FaultRule rule = service.getFaults().forPath("/").withLatency(LatencyDistribution.fixed(300, TimeUnit.MILLISECONDS));
+        final Future<Integer> status = getInBackground(rule);
+
+        testServer.stop();
+
+        assertThat(status.get(), is(200));
+        final DrainReport report = testServer.getDrainReport();
+        assertThat(report.getInFlight(), is(1));
+        assertThat(report.getCompleted(), is(1));
+        assertThat(report.getCutOff(), is(0));
+        assertThat(report.getDrain(TimeUnit.MILLISECONDS) < 2000, is(true)); // well within the 5 s timeout
+    }
+
+    @Test
+    public void requests_over_connections_kept_alive_are_rejected_rather_than_completed() throws Exception {
+        testServer.withDrainTimeout(5, TimeUnit.SECONDS).start();
+        final URI uri = testServer.getBaseUri();
+        try (Socket keptAlive = new Socket(uri.getHost(), uri.getPort())) {
+            assertThat(get(keptAlive), is(200));
+            final FaultRule rule = service.getFaults().forPath("/slow").withLatency(LatencyDistribution.fixed(1, TimeUnit.SECONDS));
+            getInBackground(rule, "/slow");
+            final Thread stop = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        testServer.stop();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            stop.start();
+            Thread.sleep(300); // the drain has started, the slow request is still in flight
+
+            assertThat(get(keptAlive), is(503));
+            assertThat(keptAlive.getInputStream().read(), is(-1)); // and closed
+            stop.join();
+        }
+        final DrainReport report = testServer.getDrainReport();
+        assertThat(report.getInFlight(), is(1));
+        assertThat(report.getCompleted(), is(1));
+        assertThat(report.getRejected(), is(1));
+    }
+
+    @Test
+    public void requests_are_cut_off_at_the_deadline() throws Exception {
+        testServer.withDrainTimeout(200, TimeUnit.MILLISECONDS).start();
+        final FaultRule rule = service.getFaults().forPath("/").withLatency(LatencyDistribution.fixed(10, TimeUnit.SECONDS));
+        getInBackground(rule);
+
+        testServer.stop();
+
+        final DrainReport report = testServer.getDrainReport();
+        assertThat(report.getInFlight(), is(1));
+        assertThat(report.getCompleted(), is(0));
+        assertThat(report.getCutOff(), is(1));
+        assertThat(report.getDrain(TimeUnit.MILLISECONDS) >= 200, is(true));
+        assertThat(report.getDrain(TimeUnit.MILLISECONDS) < 2000, is(true));
+    }
+
+    @Test
+    public void an_idle_server_stops_without_waiting_for_the_grace_period() throws Exception {
+        testServer.withDrainTimeout(5, TimeUnit.SECONDS).start();
+
+        final long start = System.nanoTime();
+        testServer.stop();
+
+        assertThat(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), is(true));
+        assertThat(testServer.getDrainReport().getInFlight(), is(0));
+        final LifecycleTimeline timeline = testServer.getTimeline();
+        for (String phase : new String[]{LifecycleTimeline.DRAIN, LifecycleTimeline.STOP_JETTY,
+                LifecycleTimeline.UNREGISTER_METRICS, LifecycleTimeline.CLEAN_UP_FILES}) {
+            assertThat(phase, timeline.getNanos(phase) > 0, is(true));
+        }
+    }
+
+    private static int get(Socket socket) throws IOException {
+        final OutputStream out = socket.getOutputStream();
+        out.write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        final DataInputStream in = new DataInputStream(socket.getInputStream());
+        final int status = Integer.parseInt(readLine(in).split(" ")[1]);
+        int length = 0;
+        boolean chunked = false;
+        for (String header = readLine(in).toLowerCase(); !header.isEmpty(); header = readLine(in).toLowerCase()) {
+            if (header.startsWith("content-length:")) {
+                length = Integer.parseInt(header.substring("content-length:".length()).trim());
+            }
+            chunked |= header.startsWith("transfer-encoding:") && header.contains("chunked");
+        }
+        if (!chunked) {
+            in.readFully(new byte[length]);
+            return status;
+        }
+        for (int chunk = Integer.parseInt(readLine(in), 16); chunk > 0; chunk = Integer.parseInt(readLine(in), 16)) {
+            in.readFully(new byte[chunk]);
+            readLine(in);
+        }
+        readLine(in);
+        return status;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0) {
+                throw new EOFException("The connection was closed");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private Future<Integer> getInBackground(FaultRule rule) throws InterruptedException {
+        return getInBackground(rule, "/");
+    }
+
+    private Future<Integer> getInBackground(FaultRule rule, String path) throws InterruptedException {
+        final URI uri = testServer.getBaseUri().resolve(path);
+        final Future<Integer> status = clients.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return new Client().resource(uri).get(ClientResponse.class).getStatus();
+            }
+        });
+        while (rule.getRequestCount() == 0) { // the request is in flight once the injector holds it
+            Thread.sleep(5);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class InProcessTransportIntegrationTest {
+    private static final String TEST_CONFIG = InProcessTransportIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private static final String IN_PROCESS_URL = "http://in-process";
+    private TestServer<ExampleConfiguration, ExampleService> testServer;
+    private ExampleClient testClient;
+
+    @Before
+    public void setup() throws Exception {
+        testServer = TestServer.create(InProcessTransportIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts()
+                .withInProcessTransport();
+        testServer.start();
+        testClient = new ExampleClient(testServer.createInProcessClient(), IN_PROCESS_URL);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @Test
+    public void requests_are_served_in_process() {
+        assertThat(testClient.getValue(), is(equalTo("expectedValue")));
+    }
+
+    @Test
+    public void error_statuses_are_passed_through() {
+        final ClientResponse response = testServer.createInProcessClient()
+                .resource(IN_PROCESS_URL + "/missing")
+                .get(ClientResponse.class);
+
+        assertThat(response.getStatus(), is(404));
+    }
+
+    @Test(expected = ClientHandlerException.class)
+    public void after_server_stopped_requests_fail() throws Exception {
+        testServer.stop();
+
+        testClient.getValue();
+    }
+
+    @Test
+    public void a_client_created_before_the_server_starts_serves_once_it_runs() throws Exception {
+        testServer.stop();
+        testServer = TestServer.create(InProcessTransportIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts()
+                .withInProcessTransport();
+        testClient = new ExampleClient(testServer.createInProcessClient(), IN_PROCESS_URL);
+        testServer.start();
+
+        assertThat(testClient.getValue(), is(equalTo("expectedValue")));
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableMap;
+import com.sun.jersey.api.client.Client;
+import com.yammer.metrics.HealthChecks;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class IsolatedTestServerIntegrationTest {
+    private static final String TEST_CONFIG = IsolatedTestServerIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private static final Map<String, String> OVERRIDES = ImmutableMap.of(
+            "filename", TestServer.SANDBOX_PLACEHOLDER + "/" + VALUE_FILE);
+    private IsolatedTestServer first;
+    private IsolatedTestServer second;
+
+    @After
+    public void tearDown() throws Exception {
+        for (IsolatedTestServer server : new IsolatedTestServer[]{first, second}) {
+            if (server != null && server.isRunning()) {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void instances_of_the_same_service_run_side_by_side_with_private_static_state() throws Exception {
+        first = createServer(ExampleService.class);
+        second = createServer(ExampleService.class);
+        first.start();
+        second.start();
+
+        assertThat(getValue(first), is(equalTo("expectedValue")));
+        assertThat(getValue(second), is(equalTo("expectedValue")));
+        assertThat(first.getBaseUri(), is(not(equalTo(second.getBaseUri()))));
+        // each has a dropwizard of its own, and a health check registry the test does not see
+        assertThat(loaderOf(first, HealthChecks.class), is(equalTo((ClassLoader) first.getClassLoader())));
+        assertThat(loaderOf(second, HealthChecks.class), is(equalTo((ClassLoader) second.getClassLoader())));
+        // the stable libraries are loaded once
+        assertThat(loaderOf(first, ImmutableMap.class), is(equalTo(loaderOf(second, ImmutableMap.class))));
+        assertThat(loaderOf(first, ImmutableMap.class), is(not(equalTo(ImmutableMap.class.getClassLoader()))));
+    }
+
+    @Test
+    public void a_stopped_server_is_started_again() throws Exception {
+        first = createServer(ExampleService.class);
+        first.start();
+        first.stop();
+        assertThat(first.isRunning(), is(false));
+
+        first.start();
+        assertThat(getValue(first), is(equalTo("expectedValue")));
+    }
+
+    @Test
+    public void stopping_a_server_releases_its_class_loader_but_not_the_logging_mbean_of_the_others() throws Exception {
+        first = createServer(ExampleService.class);
+        second = createServer(ExampleService.class);
+        first.start();
+        second.start();
+        final ClassLoader loader = first.getClassLoader();
+        first.stop();
+
+        assertThat(first.getClassLoader(), is(nullValue()));
+        final ObjectName loggingMBean = new ObjectName(SharedRegistrations.LOGGING_MBEAN_NAME);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertThat(server.isRegistered(loggingMBean), is(true));
+        // registered by the test, so that it keeps no server's class loader alive
+        assertThat(server.getClassLoaderFor(loggingMBean), is(equalTo(getClass().getClassLoader())));
+
+        first.start();
+        assertThat(first.getClassLoader(), is(not(equalTo(loader))));
+        assertThat(getValue(first), is(equalTo("expectedValue")));
+    }
+
+    @Test
+    public void a_failed_start_releases_the_class_loader_and_the_staged_files() throws Exception {
+        first = IsolatedTestServer.create(IsolatedTestServerIntegrationTest.class, ExampleService.class,
+                TEST_CONFIG + ".missing", OVERRIDES, VALUE_FILE)
+                .withSandbox()
+                .withEphemeralPorts();
+        try {
+            first.start();
+            fail("a service without its configuration should not start");
+        } catch (Exception e) {
+            assertThat(first.isRunning(), is(false));
+        }
+
+        assertThat(first.getClassLoader(), is(nullValue()));
+        assertThat(Files.exists(first.getSandbox()), is(false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void other_services_cannot_be_reset() throws Exception {
+        first = createServer(ExampleService.class);
+        first.start();
+
+        first.reset();
+    }
+
+    @Test
+    public void a_resettable_service_is_reset() throws Exception {
+        first = createServer(ResetIntegrationTest.ResettableService.class);
+        first.start();
+
+        assertThat(first.reset() > 0, is(true));
+    }
+
+    private static IsolatedTestServer createServer(Class<? extends ExampleService> serviceClass) throws Exception {
+        return IsolatedTestServer.create(IsolatedTestServerIntegrationTest.class, serviceClass, TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withSandbox()
+                .withEphemeralPorts();
+    }
+
+    private static ClassLoader loaderOf(IsolatedTestServer server, Class<?> type) throws Exception {
+        return server.getClassLoader().loadClass(type.getName()).getClassLoader();
+    }
+
+    private static String getValue(IsolatedTestServer server) {
+        return new ExampleClient(new Client(), server.getBaseUri().toString()).getValue();
+    }
+}
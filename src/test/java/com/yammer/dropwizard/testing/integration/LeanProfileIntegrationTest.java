@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class LeanProfileIntegrationTest {
+    private static final String TEST_CONFIG = LeanProfileIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private TestServer<ExampleConfiguration, ExampleService> testServer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (testServer != null && testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @Test
+    public void the_lean_profile_shrinks_the_server() throws Exception {
+        testServer = TestServer.create(LeanProfileIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts()
+                .withInProcessTransport()
+                .withLeanProfile();
+        testServer.start();
+
+        final Map<String, Object> profile = testServer.getEffectiveProfile();
+        assertThat(profile.get("server.maxThreads"), is(equalTo((Object) 16)));
+        assertThat(profile.get("main.acceptors"), is(equalTo((Object) 1)));
+        assertThat(profile.get("main.selectors"), is(equalTo((Object) 1)));
+        assertThat(profile.get("main.directBuffers"), is(equalTo((Object) false)));
+        assertThat(profile.get("main.requestBufferSize"), is(equalTo((Object) 8192)));
+        assertThat(profile.get("internal.maxThreads"), is(equalTo((Object) 4)));
+        assertThat(new ExampleClient(testServer.getClient(), testServer.getBaseUri().toString()).getValue(), is(equalTo("expectedValue")));
+    }
+
+    @Test
+    public void without_a_profile_the_configured_sizes_are_reported() throws Exception {
+        testServer = TestServer.create(LeanProfileIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts();
+        testServer.start();
+
+        assertThat(testServer.getEffectiveProfile().get("server.maxThreads"), is(equalTo((Object) 1024)));
+        assertThat(testServer.getEffectiveProfile().get("internal.maxThreads"), is(equalTo((Object) 8)));
+    }
+}
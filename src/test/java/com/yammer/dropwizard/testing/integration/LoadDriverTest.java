@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class LoadDriverTest {
+    private static final String TEST_CONFIG = LoadDriverTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+
+    @Test
+    public void closed_loop_records_every_successful_request() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final LoadResult result = LoadDriver.forRequest(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return calls.incrementAndGet();
+            }
+        }).closedLoop(2, 100, TimeUnit.MILLISECONDS);
+
+        assertThat(result.getRequestCount(), is(equalTo((long) calls.get())));
+        assertThat(result.getErrorCount(), is(0L));
+    }
+
+    @Test
+    public void failures_are_counted_separately() throws Exception {
+        final LoadResult result = LoadDriver.forRequest(new Callable<Void>() {
+            @Override
+            public Void call() {
+                throw new IllegalStateException("boom");
+            }
+        }).closedLoop(1, 50, TimeUnit.MILLISECONDS);
+
+        assertThat(result.getRequestCount(), is(0L));
+        assertThat(result.getErrorCount() > 0, is(true));
+        assertThat(result.getFirstError().get().getMessage(), is(equalTo("boom")));
+    }
+
+    @Test
+    public void open_loop_latencies_include_the_time_requests_waited_to_be_sent() throws Exception {
+        // one worker issuing 5ms requests cannot keep up with 1000 requests per second, so the requests queue up
+        final LoadResult result = LoadDriver.forRequest(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                Thread.sleep(5);
+                return null;
+            }
+        }).openLoop(1000, 200, TimeUnit.MILLISECONDS, 1);
+
+        assertThat(result.getP99(TimeUnit.MILLISECONDS) > 50, is(true));
+    }
+
+    @Test
+    public void drives_load_against_a_test_server() throws Exception {
+        final TestServer<ExampleConfiguration, ExampleService> testServer =
+                TestServer.create(LoadDriverTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                        .withEphemeralPorts()
+                        .withInProcessTransport();
+        testServer.start();
+        try {
+            final LoadResult result = LoadDriver.forGet(testServer, "/")
+                    .withWarmup(100, TimeUnit.MILLISECONDS)
+                    .closedLoop(4, 300, TimeUnit.MILLISECONDS);
+
+            assertThat(result.getErrorCount(), is(0L));
+            assertThat(result.getRequestCount() > 0, is(true));
+        } finally {
+            testServer.stop();
+        }
+    }
+}
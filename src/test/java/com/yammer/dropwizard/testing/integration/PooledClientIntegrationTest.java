@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class PooledClientIntegrationTest {
+    private static final String TEST_CONFIG = PooledClientIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private TestServer<ExampleConfiguration, ExampleService> testServer;
+
+    @Before
+    public void setup() throws Exception {
+        testServer = TestServer.create(PooledClientIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE);
+        testServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @Test
+    public void sequential_requests_reuse_one_connection() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            assertThat(testServer.resource("/").get(String.class), is(equalTo("expectedValue")));
+        }
+
+        assertThat(acceptedConnections(), is(1L));
+    }
+
+    @Test(expected = ClientHandlerException.class)
+    public void the_clients_are_shut_down_when_the_server_stops() throws Exception {
+        final Client client = testServer.getClient();
+        testServer.stop();
+        testServer.start();
+
+        assertThat(testServer.getClient(), is(not(sameInstance(client))));
+        assertThat(testServer.resource("/").get(String.class), is(equalTo("expectedValue")));
+        client.resource(testServer.getBaseUri()).get(String.class);
+    }
+
+    private long acceptedConnections() {
+        final MetricName accepts = new MetricName(SelectChannelConnector.class, "accepts",
+                Integer.toString(testServer.getBaseUri().getPort()));
+        return ((Meter) Metrics.defaultRegistry().allMetrics().get(accepts)).count();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.sun.jersey.api.client.Client;
+import com.yammer.dropwizard.json.ObjectMapperFactory;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+
+public class ProgrammaticConfigurationIntegrationTest {
+    private static final String TEST_CONFIG = ProgrammaticConfigurationIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private TestServer<ExampleConfiguration, ExampleService> testServer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (testServer != null && testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @Test
+    public void overrides_are_applied_on_top_of_the_config_file() throws Exception {
+        testServer = TestServer.create(ProgrammaticConfigurationIntegrationTest.class, new ExampleService(), TEST_CONFIG,
+                ImmutableMap.of("http.port", "0", "http.adminPort", "0"), VALUE_FILE);
+        testServer.start();
+
+        assertThat(testServer.getBaseUri().getPort(), is(not(equalTo(20190))));
+        assertThat(getValue(), is(equalTo("expectedValue")));
+    }
+
+    @Test
+    public void a_configuration_object_can_be_used_instead_of_a_file() throws Exception {
+        final ExampleConfiguration configuration = new ExampleConfiguration();
+        configuration.setFilename("./" + VALUE_FILE);
+        configuration.getHttpConfiguration().setPort(0);
+        configuration.getHttpConfiguration().setAdminPort(0);
+
+        testServer = TestServer.create(ProgrammaticConfigurationIntegrationTest.class, new ExampleService(), configuration, VALUE_FILE);
+        testServer.start();
+
+        assertThat(getValue(), is(equalTo("expectedValue")));
+    }
+    @Test
+    public void a_config_file_changed_within_its_modification_time_granularity_is_parsed_again() throws Exception {
+        final File configFile = File.createTempFile("config-", ".yml");
+        try {
+            Files.copy(new File(TEST_CONFIG), configFile);
+            final long lastModified = configFile.lastModified();
+            assertThat(buildConfiguration(configFile).getFilename(), is(equalTo("./" + VALUE_FILE)));
+
+            Files.write("filename: ./other.txt\n", configFile, Charsets.UTF_8);
+            configFile.setLastModified(lastModified);
+
+            assertThat(buildConfiguration(configFile).getFilename(), is(equalTo("./other.txt")));
+        } finally {
+            configFile.delete();
+        }
+    }
+
+    private static ExampleConfiguration buildConfiguration(File configFile) throws Exception {
+        return ConfigurationOverrides.build(ExampleConfiguration.class, new ObjectMapperFactory(),
+                configFile.getPath(), ImmutableMap.<String, String>of());
+    }
+
+    private String getValue() {
+        return new ExampleClient(new Client(), testServer.getBaseUri().toString()).getValue();
+    }
+}
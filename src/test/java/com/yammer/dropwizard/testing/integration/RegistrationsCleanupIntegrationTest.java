@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.Sets;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricName;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class RegistrationsCleanupIntegrationTest {
+    private static final String TEST_CONFIG = RegistrationsCleanupIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private TestServer<ExampleConfiguration, ExampleService> first;
+    private TestServer<ExampleConfiguration, ExampleService> second;
+
+    @After
+    public void tearDown() throws Exception {
+        for (TestServer<?, ?> server : new TestServer<?, ?>[]{first, second}) {
+            if (server != null && server.isRunning()) {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void metrics_registered_while_running_are_removed_on_stop() throws Exception {
+        final Set<MetricName> before = serviceMetrics();
+        first = createServer();
+        first.start();
+        assertThat(serviceMetrics().size() > before.size(), is(true));
+
+        first.stop();
+
+        assertThat(serviceMetrics(), is(equalTo(before)));
+        assertThat(first.getLeakReport().isClean(), is(true));
+    }
+
+    @Test
+    public void metrics_shared_with_a_running_server_are_kept() throws Exception {
+        final Set<MetricName> before = serviceMetrics();
+        first = createServer();
+        first.start();
+        second = createServer();
+        second.start();
+        final Set<MetricName> running = serviceMetrics();
+
+        first.stop();
+        assertThat(serviceMetrics(), is(equalTo(running)));
+
+        second.stop();
+        assertThat(serviceMetrics(), is(equalTo(before)));
+    }
+
+    private static TestServer<ExampleConfiguration, ExampleService> createServer() throws Exception {
+        return TestServer.create(RegistrationsCleanupIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts();
+    }
+
+    // the lifecycle timings of this package are kept on purpose
+    private static Set<MetricName> serviceMetrics() {
+        final Set<MetricName> names = Sets.newHashSet();
+        for (MetricName name : Metrics.defaultRegistry().allMetrics().keySet()) {
+            if (!name.getGroup().equals(LifecycleService.class.getPackage().getName())) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+}
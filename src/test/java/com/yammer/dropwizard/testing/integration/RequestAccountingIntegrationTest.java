@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.sun.jersey.api.client.ClientResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class RequestAccountingIntegrationTest {
+    private static final String TEST_CONFIG = RequestAccountingIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private static final long BUDGET_BYTES = 256 * 1024;
+    private TestServer<ExampleConfiguration, ExampleService> testServer;
+
+    @Before
+    public void setup() throws Exception {
+        testServer = TestServer.create(RequestAccountingIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts()
+                .withRequestAccounting();
+        testServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @Test
+    public void the_requests_are_accounted_for_per_resource_method() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            testServer.resource("/").get(String.class); // warm up
+        }
+        testServer.getRequestAccounting().clear();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(testServer.resource("/").get(String.class), is(equalTo("expectedValue")));
+        }
+
+        final RequestCost cost = testServer.getRequestAccounting().getCost("GET /");
+        assertThat(cost.getRequests(), is(100L));
+        assertThat(cost.getMeanAllocatedBytes() > 0, is(true));
+        assertThat(cost.getMeanAllocatedBytes() < BUDGET_BYTES, is(true));
+        assertThat(cost.getMaxAllocatedBytes() >= cost.getMeanAllocatedBytes(), is(true));
+        assertThat(cost.getCpuNanos() > 0, is(true));
+    }
+
+    @Test
+    public void requests_not_reaching_a_resource_method_are_unmatched() throws Exception {
+        final ClientResponse response = testServer.resource("/missing").get(ClientResponse.class);
+
+        assertThat(response.getStatus(), is(404));
+        assertThat(testServer.getRequestAccounting().getCost("GET " + RequestAccounting.UNMATCHED).getRequests(), is(1L));
+        assertThat(testServer.getRequestAccounting().getCost("GET /").getRequests(), is(0L));
+    }
+}
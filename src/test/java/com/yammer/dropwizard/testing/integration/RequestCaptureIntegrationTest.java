@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class RequestCaptureIntegrationTest {
+    private static final String TEST_CONFIG = RequestCaptureIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private static final String IN_PROCESS_URL = "http://in-process";
+    private TestServer<ExampleConfiguration, ExampleService> testServer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @Test
+    public void requests_are_captured_with_their_status_and_size() throws Exception {
+        start(InMemoryRequestLog.DEFAULT_CAPACITY);
+        final Client client = testServer.createInProcessClient();
+        client.resource(IN_PROCESS_URL + "/").get(String.class);
+        client.resource(IN_PROCESS_URL + "/missing?page=2").get(ClientResponse.class).close();
+
+        final List<RequestLogEntry> entries = testServer.getRequestLog().getEntries();
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get(0).getEndpoint(), is(equalTo("GET /")));
+        assertThat(entries.get(0).getStatus(), is(200));
+        assertThat(entries.get(0).getBytes(), is((long) "expectedValue".length()));
+        assertThat(entries.get(1).getUri(), is(equalTo("/missing?page=2")));
+        assertThat(entries.get(1).getStatus(), is(404));
+        assertThat(testServer.getRequestLog().getEntries("GET", "/missing").size(), is(1));
+        assertThat(testServer.getRequestLog().getEntries("GET", null).size(), is(2));
+        assertThat(testServer.getRequestLog().getLatenciesByEndpoint().get("GET /").getTotalCount(), is(1L));
+    }
+
+    @Test
+    public void only_the_last_requests_are_kept() throws Exception {
+        start(2);
+        final ExampleClient client = new ExampleClient(testServer.createInProcessClient(), IN_PROCESS_URL);
+        for (int i = 0; i < 3; i++) {
+            client.getValue();
+        }
+
+        assertThat(testServer.getRequestLog().getEntries().size(), is(2));
+        assertThat(testServer.getRequestLog().getEntries().get(0).getSequence(), is(1L));
+        assertThat(testServer.getRequestLog().getTotalCount(), is(3L));
+
+        testServer.getRequestLog().clear();
+        assertThat(testServer.getRequestLog().getEntries().isEmpty(), is(true));
+    }
+
+    private void start(int capacity) throws Exception {
+        testServer = TestServer.create(RequestCaptureIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts()
+                .withInProcessTransport()
+                .withRequestCapture(capacity);
+        testServer.start();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.sun.jersey.api.client.Client;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ResetIntegrationTest {
+    private static final String TEST_CONFIG = ResetIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private TestServer<ExampleConfiguration, ? extends ExampleService> testServer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (testServer != null && testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @Test
+    public void a_resettable_service_is_reset_without_a_restart() throws Exception {
+        final ResettableService service = new ResettableService();
+        testServer = TestServer.create(ResetIntegrationTest.class, service, TEST_CONFIG, VALUE_FILE).withEphemeralPorts();
+        testServer.start();
+
+        testServer.reset();
+
+        assertThat(service.resets.get(), is(1));
+        assertThat(testServer.getTimeline().getNanos(LifecycleTimeline.RESET) > 0, is(true));
+    }
+
+    @Test
+    public void the_reset_is_an_admin_task() throws Exception {
+        final ResettableService service = new ResettableService();
+        testServer = TestServer.create(ResetIntegrationTest.class, service, TEST_CONFIG, VALUE_FILE).withEphemeralPorts();
+        testServer.start();
+
+        new Client().resource(testServer.getAdminUri().resolve("tasks/reset")).post();
+
+        assertThat(service.resets.get(), is(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void other_services_cannot_be_reset() throws Exception {
+        testServer = TestServer.create(ResetIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE).withEphemeralPorts();
+        testServer.start();
+
+        testServer.reset();
+    }
+
+    public static class ResettableService extends ExampleService implements Resettable {
+        private final AtomicInteger resets = new AtomicInteger();
+
+        @Override
+        public void reset() {
+            resets.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableMap;
+import com.sun.jersey.api.client.Client;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SandboxIntegrationTest {
+    private static final String TEST_CONFIG = SandboxIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private static final Map<String, String> OVERRIDES = ImmutableMap.of(
+            "filename", TestServer.SANDBOX_PLACEHOLDER + "/" + VALUE_FILE,
+            "http.port", "0",
+            "http.adminPort", "0");
+    private TestServer<ExampleConfiguration, ExampleService> first;
+    private TestServer<ExampleConfiguration, ExampleService> second;
+
+    @After
+    public void tearDown() throws Exception {
+        for (TestServer<?, ?> server : new TestServer<?, ?>[]{first, second}) {
+            if (server != null && server.isRunning()) {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void servers_stage_files_of_the_same_name_side_by_side() throws Exception {
+        first = createServer();
+        second = createServer();
+        first.start();
+        second.start();
+
+        assertThat(getValue(first), is(equalTo("expectedValue")));
+        assertThat(getValue(second), is(equalTo("expectedValue")));
+        assertThat(new File(VALUE_FILE).exists(), is(false));
+        // both are links to the cached fixture
+        assertThat(Files.isSameFile(first.getSandbox().resolve(VALUE_FILE), second.getSandbox().resolve(VALUE_FILE)), is(true));
+    }
+
+    @Test
+    public void the_sandbox_is_removed_on_stop_and_staged_again_on_start() throws Exception {
+        first = createServer();
+        first.start();
+        final Path sandbox = first.getSandbox();
+
+        first.stop();
+        assertThat(Files.exists(sandbox), is(false));
+
+        first.start();
+        assertThat(getValue(first), is(equalTo("expectedValue")));
+    }
+
+    @Test
+    public void a_fixture_modified_through_a_sandbox_is_cached_again() throws Exception {
+        first = createServer();
+        first.start();
+        final Path staged = first.getSandbox().resolve(VALUE_FILE);
+        assertThat(Files.getPosixFilePermissions(staged).contains(PosixFilePermission.OWNER_WRITE), is(false));
+        staged.toFile().setWritable(true);
+        Files.write(staged, "modifiedValue".getBytes(StandardCharsets.UTF_8));
+        first.stop();
+
+        second = createServer();
+        second.start();
+        assertThat(getValue(second), is(equalTo("expectedValue")));
+    }
+
+    @Test
+    public void the_sandbox_is_created_on_start_and_removed_when_the_start_fails() throws Exception {
+        final Path parent = Files.createTempDirectory("sandbox-parent-");
+        first = TestServer.create(SandboxIntegrationTest.class, new ExampleService(), TEST_CONFIG + ".missing",
+                OVERRIDES, VALUE_FILE).withSandbox(parent);
+        assertThat(sandboxesIn(parent), is(0));
+
+        try {
+            first.start();
+            fail("a service without its configuration should not start");
+        } catch (FileNotFoundException e) {
+            assertThat(first.isRunning(), is(false));
+        }
+
+        assertThat(Files.exists(first.getSandbox()), is(false));
+        assertThat(new File(VALUE_FILE).exists(), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void supporting_files_outside_the_sandbox_are_rejected() throws Exception {
+        first = TestServer.create(SandboxIntegrationTest.class, new ExampleService(), TEST_CONFIG, OVERRIDES,
+                VALUE_FILE, "../" + VALUE_FILE).withSandbox();
+        first.start();
+    }
+
+    private static TestServer<ExampleConfiguration, ExampleService> createServer() throws Exception {
+        return TestServer.create(SandboxIntegrationTest.class, new ExampleService(), TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withSandbox();
+    }
+
+    private static int sandboxesIn(Path parent) throws IOException {
+        int sandboxes = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(parent, "test-server-*")) {
+            for (Path ignored : entries) {
+                sandboxes++;
+            }
+        }
+        return sandboxes;
+    }
+
+    private static String getValue(TestServer<?, ?> server) {
+        return new ExampleClient(new Client(), server.getBaseUri().toString()).getValue();
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.yammer.dropwizard.config.Environment;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.RunListener;
+
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ShardedServerRunnerIntegrationTest {
+    private static final String TEST_CONFIG = ShardedServerRunnerIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+
+    @Test
+    public void the_methods_are_spread_across_the_servers() throws Exception {
+        final Runner runner = Request.aClass(ShardedExample.class).getRunner();
+
+        final JUnitCore core = new JUnitCore();
+        final OneAtATimeListener listener = new OneAtATimeListener();
+        core.addListener(listener);
+        final Result result = core.run(runner);
+
+        assertThat(listener.overlapped.get(), is(false));
+        assertThat(result.getRunCount(), is(9));
+        assertThat(result.getIgnoreCount(), is(1));
+        assertThat(result.getFailureCount(), is(1));
+        assertThat(result.getFailures().get(0).getDescription().getMethodName(), is(equalTo("fails")));
+        assertThat(ShardedExample.SERVERS.size(), is(3));
+        assertThat(CountingService.RESETS.get(), is(8)); // all but the method which opts out
+
+        final ShardReport report = ((ShardedServerRunner) runner).getReport();
+        assertThat(report.getInstanceCount(), is(3));
+        assertThat(report.getMethodCount(0) + report.getMethodCount(1) + report.getMethodCount(2), is(9)); // not the ignored one
+        assertThat(report.getSaved(TimeUnit.MILLISECONDS) > 0, is(true));
+    }
+
+    @Test
+    public void the_methods_of_a_server_which_cannot_be_cleaned_up_run_on_the_others() throws Exception {
+        final Runner runner = Request.aClass(RetiringExample.class).getRunner();
+
+        final Result result = new JUnitCore().run(runner);
+
+        assertThat(result.getRunCount(), is(4));
+        assertThat(result.getFailureCount(), is(0));
+        final ShardReport report = ((ShardedServerRunner) runner).getReport();
+        // the broken server fails its reset and its restart after the first method, and is retired
+        assertThat(report.getMethodCount(0), is(1));
+        assertThat(report.getMethodCount(1), is(3));
+        assertThat(report.getStolenCount(1) > 0, is(true));
+    }
+
+    @RunWith(ShardedServerRunner.class)
+    @ShardedServers(instances = 3, cleanup = ShardedServers.Cleanup.RESET)
+    public static class ShardedExample {
+        private static final Set<URI> SERVERS = Sets.newConcurrentHashSet();
+
+        @ShardedServers.Server
+        public TestServer<ExampleConfiguration, CountingService> server;
+
+        @ShardedServers.Factory
+        public static TestServer<ExampleConfiguration, CountingService> createServer() throws Exception {
+            return TestServer.create(ShardedExample.class, new CountingService(), TEST_CONFIG,
+                    ImmutableMap.of("filename", TestServer.SANDBOX_PLACEHOLDER + "/value.txt"), VALUE_FILE).withSandbox();
+        }
+
+        @Test
+        public void one() throws Exception {
+            serve();
+        }
+
+        @Test
+        public void two() throws Exception {
+            serve();
+        }
+
+        @Test
+        public void three() throws Exception {
+            serve();
+        }
+
+        @Test
+        public void four() throws Exception {
+            serve();
+        }
+
+        @Test
+        public void five() throws Exception {
+            serve();
+        }
+
+        @Test
+        public void six() throws Exception {
+            serve();
+        }
+
+        @Test
+        public void seven() throws Exception {
+            serve();
+        }
+
+        @Test
+        @ShardedServers.CleanupAfter(ShardedServers.Cleanup.NONE)
+        public void without_cleanup() throws Exception {
+            serve();
+        }
+
+        @Test
+        @Ignore
+        public void ignored() throws Exception {
+            serve();
+        }
+
+        @Test
+        public void fails() throws Exception {
+            serve();
+            throw new AssertionError("expected to fail");
+        }
+
+        private void serve() throws Exception {
+            SERVERS.add(server.getBaseUri());
+            assertThat(server.resource("/").get(String.class), is(equalTo("expectedValue")));
+            Thread.sleep(200);
+        }
+    }
+
+    @RunWith(ShardedServerRunner.class)
+    @ShardedServers(instances = 2, cleanup = ShardedServers.Cleanup.RESET)
+    public static class RetiringExample {
+        private static final AtomicInteger CREATED = new AtomicInteger();
+
+        @ShardedServers.Server
+        public TestServer<ExampleConfiguration, BreakingService> server;
+
+        @ShardedServers.Factory
+        public static TestServer<ExampleConfiguration, BreakingService> createServer() throws Exception {
+            // the servers are created in the order of their shards
+            return TestServer.create(RetiringExample.class, new BreakingService(CREATED.getAndIncrement() == 0),
+                    TEST_CONFIG, ImmutableMap.of("filename", TestServer.SANDBOX_PLACEHOLDER + "/value.txt"), VALUE_FILE)
+                    .withSandbox();
+        }
+
+        @Test
+        public void one() throws Exception {
+            serve();
+        }
+
+        @Test
+        public void two() throws Exception {
+            serve();
+        }
+
+        @Test
+        public void three() throws Exception {
+            serve();
+        }
+
+        @Test
+        public void four() throws Exception {
+            serve();
+        }
+
+        private void serve() throws Exception {
+            assertThat(server.resource("/").get(String.class), is(equalTo("expectedValue")));
+            Thread.sleep(200);
+        }
+    }
+
+    /**
+     * Notices callbacks arriving while another one is still being handled.
+     */
+    private static final class OneAtATimeListener extends RunListener {
+        private final AtomicInteger inCallback = new AtomicInteger();
+        private final AtomicBoolean overlapped = new AtomicBoolean();
+
+        @Override
+        public void testStarted(Description description) throws Exception {
+            handle();
+        }
+
+        @Override
+        public void testFinished(Description description) throws Exception {
+            handle();
+        }
+
+        private void handle() throws InterruptedException {
+            if (inCallback.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+            Thread.sleep(20);
+            inCallback.decrementAndGet();
+        }
+    }
+
+    /**
+     * When broken, fails to reset and to run again, so that its server can neither be cleaned up nor restarted.
+     */
+    public static class BreakingService extends ExampleService implements Resettable {
+        private final boolean broken;
+        private final AtomicInteger runs = new AtomicInteger();
+
+        public BreakingService(boolean broken) {
+            this.broken = broken;
+        }
+
+        @Override
+        public void run(ExampleConfiguration configuration, Environment environment) throws Exception {
+            if (broken && runs.incrementAndGet() > 1) {
+                throw new IllegalStateException("The broken service cannot be restarted");
+            }
+            super.run(configuration, environment);
+        }
+
+        @Override
+        public void reset() {
+            if (broken) {
+                throw new IllegalStateException("The broken service cannot be reset");
+            }
+        }
+    }
+
+    public static class CountingService extends ExampleService implements Resettable {
+        private static final AtomicInteger RESETS = new AtomicInteger();
+
+        @Override
+        public void reset() {
+            RESETS.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.yammer.dropwizard.config.Environment;
+import com.yammer.metrics.core.HealthCheck;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class StartAsyncIntegrationTest {
+    private static final String TEST_CONFIG = StartAsyncIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private TestServer<ExampleConfiguration, ? extends ExampleService> testServer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (testServer != null && testServer.isRunning()) {
+            testServer.stop();
+        }
+    }
+
+    @Test
+    public void the_future_completes_once_the_server_is_ready() throws Exception {
+        testServer = TestServer.create(StartAsyncIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts();
+
+        final ListenableFuture<? extends TestServer<?, ?>> ready = testServer.startAsync();
+
+        assertThat(ready.get(30, TimeUnit.SECONDS).isRunning(), is(true));
+        assertThat(testServer.resource("/").get(String.class), is(equalTo("expectedValue")));
+    }
+
+    @Test
+    public void a_failing_health_check_times_out_and_stops_the_server() throws Exception {
+        testServer = TestServer.create(StartAsyncIntegrationTest.class, new UnhealthyService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts();
+
+        try {
+            testServer.startAsync(1, TimeUnit.SECONDS).get();
+            fail("The server should not have been ready");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(TimeoutException.class)));
+            assertThat(e.getCause().getMessage(), containsString("health check database failed: unreachable"));
+        }
+        assertThat(testServer.isRunning(), is(false));
+    }
+
+    @Test
+    public void a_start_still_running_at_the_timeout_is_waited_for_and_stopped() throws Exception {
+        final SlowService service = new SlowService();
+        testServer = TestServer.create(StartAsyncIntegrationTest.class, service, TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts();
+
+        try {
+            testServer.startAsync(200, TimeUnit.MILLISECONDS).get();
+            fail("The server should not have been ready");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(TimeoutException.class)));
+            assertThat(e.getCause().getMessage(), containsString("start() has not returned"));
+        }
+        assertThat(service.ran, is(true));
+        assertThat(testServer.isRunning(), is(false));
+    }
+
+    @Test
+    public void a_failure_to_start_jetty_is_reported() throws Exception {
+        try (ServerSocket taken = new ServerSocket(0)) {
+            testServer = TestServer.create(StartAsyncIntegrationTest.class, new ExampleService(), TEST_CONFIG,
+                    ImmutableMap.of("http.port", Integer.toString(taken.getLocalPort()), "http.adminPort", "0"), VALUE_FILE);
+            try {
+                testServer.startAsync().get();
+                fail("The port is taken");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), is(instanceOf(BindException.class)));
+            }
+        }
+        assertThat(testServer.isRunning(), is(false));
+    }
+
+    public static class SlowService extends ExampleService {
+        private volatile boolean ran = false;
+
+        @Override
+        public void run(ExampleConfiguration configuration, Environment environment) throws Exception {
+            Thread.sleep(1000);
+            super.run(configuration, environment);
+            ran = true;
+        }
+    }
+
+    public static class UnhealthyService extends ExampleService {
+        @Override
+        public void run(ExampleConfiguration configuration, Environment environment) throws Exception {
+            super.run(configuration, environment);
+            environment.addHealthCheck(new HealthCheck("database") {
+                @Override
+                protected Result check() {
+                    return Result.unhealthy("unreachable");
+                }
+            });
+        }
+    }
+}
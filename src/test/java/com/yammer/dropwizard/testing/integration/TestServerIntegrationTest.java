@@ -73,6 +73,35 @@ public class TestServerIntegrationTest {
         testClient.getValue();
     }
 
+    @Test
+    public void after_server_stopped_the_same_one_can_be_started_again() throws Exception {
+        testServer.stop();
+
+        testServer.start();
+
+        assertThat(testClient.getValue(), is(equalTo(getExpectedValue())));
+    }
+
+    @Test
+    public void after_server_restarted_it_is_still_serving() throws Exception {
+        testServer.restart();
+
+        assertThat(testServer.isRunning(), is(true));
+        assertThat(testClient.getValue(), is(equalTo(getExpectedValue())));
+    }
+
+    @Test
+    public void the_startup_and_shutdown_phases_are_timed() throws Exception {
+        testServer.stop();
+
+        final LifecycleTimeline timeline = testServer.getTimeline();
+        for (String phase : new String[]{LifecycleTimeline.INITIALIZE, LifecycleTimeline.CONFIGURATION,
+                LifecycleTimeline.SERVICE_RUN, LifecycleTimeline.SERVER_START, LifecycleTimeline.STOP_JETTY}) {
+            assertThat(phase, timeline.getNanos(phase) > 0, is(true));
+        }
+        assertThat(LifecycleTimings.getReport(5).contains("ExampleService"), is(true));
+    }
+
     private String getExpectedValue() throws IOException {
         try (InputStream resourceInputStream = TestServerIntegrationTest.class.getResourceAsStream(VALUE_FILE)) {
             Scanner valueScanner = new Scanner(resourceInputStream);
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.sun.jersey.api.client.Client;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class TestServerPoolIntegrationTest {
+    private static final String TEST_CONFIG = TestServerPoolIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private static final TestServerPool POOL = new TestServerPool(true);
+
+    @ClassRule
+    public static final TestServerRule<ExampleConfiguration, ExampleService> SERVER =
+            new TestServerRule<>(POOL, TestServerPoolIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                    .withEphemeralPorts();
+
+    @After
+    public void tearDown() throws Exception {
+        assertThat(SERVER.getServer().isRunning(), is(true));
+    }
+
+    @Test
+    public void the_rule_provides_a_running_server() {
+        final ExampleClient client = new ExampleClient(new Client(), SERVER.getServer().getBaseUri().toString());
+
+        assertThat(client.getValue(), is(equalTo("expectedValue")));
+    }
+
+    @Test
+    public void an_identical_setup_gets_the_same_server() throws Exception {
+        final TestServer<ExampleConfiguration, ExampleService> server =
+                POOL.acquire(TestServerPoolIntegrationTest.class, new ExampleService(), true, TEST_CONFIG, VALUE_FILE);
+        try {
+            assertThat(server, is(sameInstance(SERVER.getServer())));
+        } finally {
+            POOL.release(server);
+        }
+    }
+
+    @Test
+    public void a_server_stopped_behind_the_pools_back_is_restarted_for_all_its_holders() throws Exception {
+        SERVER.getServer().stop();
+        final TestServer<ExampleConfiguration, ExampleService> server =
+                POOL.acquire(TestServerPoolIntegrationTest.class, new ExampleService(), true, TEST_CONFIG, VALUE_FILE);
+        POOL.release(server);
+
+        assertThat(server, is(sameInstance(SERVER.getServer())));
+        assertThat(server.isRunning(), is(true)); // the rule still holds it
+    }
+}
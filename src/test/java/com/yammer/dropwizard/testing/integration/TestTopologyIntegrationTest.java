@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.sun.jersey.api.client.Client;
+import com.yammer.dropwizard.Service;
+import com.yammer.dropwizard.config.Bootstrap;
+import com.yammer.dropwizard.config.Environment;
+import com.yammer.dropwizard.lifecycle.Managed;
+import org.eclipse.jetty.http.MimeTypes;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestTopologyIntegrationTest {
+    private static final String TEST_CONFIG = TestTopologyIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private static final Map<String, String> OVERRIDES = ImmutableMap.of(
+            "filename", TestServer.SANDBOX_PLACEHOLDER + "/" + VALUE_FILE);
+    private static final Map<String, String> EPHEMERAL_PORTS = ImmutableMap.of("http.port", "0", "http.adminPort", "0");
+    private TestTopology topology;
+
+    @After
+    public void tearDown() throws Exception {
+        if (topology != null && topology.isRunning()) {
+            topology.stop();
+        }
+    }
+
+    @Test
+    public void downstream_services_are_started_with_the_uris_of_their_upstreams() throws Exception {
+        topology = TestTopology.create(TestTopologyIntegrationTest.class)
+                .withService("frontend", new ProxyService(), TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withService("backend", new ExampleService(), TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withService("other", new ExampleService(), TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withDependency("frontend", "backend", "upstream")
+                .withDependency("frontend", "other")
+                .withSandbox("frontend")
+                .withSandbox("backend")
+                .withSandbox("other");
+        topology.start();
+
+        assertThat(topology.isRunning(), is(true));
+        assertThat(new ExampleClient(new Client(), topology.getBaseUri("frontend").toString()).getValue(),
+                is(equalTo("proxied expectedValue")));
+
+        topology.stop();
+        assertThat(topology.getServer("frontend").isRunning(), is(false));
+        assertThat(topology.getServer("backend").isRunning(), is(false));
+        assertThat(topology.getServer("other").isRunning(), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cyclic_dependencies_are_rejected() throws Exception {
+        TestTopology.create(TestTopologyIntegrationTest.class)
+                .withService("a", new ExampleService(), TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withService("b", new ExampleService(), TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withDependency("a", "b")
+                .withDependency("b", "a");
+    }
+
+    @Test
+    public void services_without_a_sandbox_read_their_files_from_the_working_directory() throws Exception {
+        topology = TestTopology.create(TestTopologyIntegrationTest.class)
+                .withService("backend", new ExampleService(), TEST_CONFIG, EPHEMERAL_PORTS, VALUE_FILE);
+        topology.start();
+
+        assertThat(new ExampleClient(new Client(), topology.getBaseUri("backend").toString()).getValue(),
+                is(equalTo("expectedValue")));
+    }
+
+    @Test
+    public void the_started_services_are_stopped_when_one_fails() throws Exception {
+        topology = TestTopology.create(TestTopologyIntegrationTest.class)
+                .withService("backend", new ExampleService(), TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withService("broken", new ExampleService(), TEST_CONFIG, ImmutableMap.of("filename", "missing.txt"))
+                .withSandbox("backend");
+        try {
+            topology.start();
+            fail("the broken service should not start");
+        } catch (FileNotFoundException expected) {
+            assertThat(expected.getMessage(), containsString("missing.txt"));
+        }
+
+        assertThat(topology.isRunning(), is(false));
+        assertThat(topology.getServer("backend").isRunning(), is(false));
+    }
+
+    @Test
+    public void the_services_are_stopped_in_the_reverse_order_of_their_start() throws Exception {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        topology = TestTopology.create(TestTopologyIntegrationTest.class)
+                .withService("front", new LifecycleRecordingService("front", events), TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withService("middle", new LifecycleRecordingService("middle", events), TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withService("back", new LifecycleRecordingService("back", events), TEST_CONFIG, OVERRIDES, VALUE_FILE)
+                .withDependency("front", "middle")
+                .withDependency("middle", "back")
+                .withSandbox("front")
+                .withSandbox("middle")
+                .withSandbox("back");
+        topology.start();
+        topology.stop();
+
+        assertThat(events, is(equalTo((List<String>) ImmutableList.of(
+                "back started", "middle started", "front started",
+                "front stopped", "middle stopped", "back stopped"))));
+    }
+
+    public static class LifecycleRecordingService extends ExampleService {
+        private final String name;
+        private final List<String> events;
+
+        public LifecycleRecordingService(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public void run(ExampleConfiguration configuration, Environment environment) throws Exception {
+            super.run(configuration, environment);
+            environment.manage(new Managed() {
+                @Override
+                public void start() {
+                    events.add(name + " started");
+                }
+
+                @Override
+                public void stop() {
+                    events.add(name + " stopped");
+                }
+            });
+        }
+    }
+
+    public static class ProxyConfiguration extends ExampleConfiguration {
+        private String upstream;
+
+        public String getUpstream() {
+            return upstream;
+        }
+
+        public void setUpstream(String upstream) {
+            this.upstream = upstream;
+        }
+    }
+
+    public static class ProxyService extends Service<ProxyConfiguration> {
+        @Override
+        public void initialize(Bootstrap<ProxyConfiguration> bootstrap) {
+            bootstrap.setName("proxy-service");
+        }
+
+        @Override
+        public void run(ProxyConfiguration configuration, Environment environment) throws Exception {
+            environment.addResource(new ProxyResource(new ExampleClient(new Client(), configuration.getUpstream())));
+        }
+    }
+
+    @Path("/")
+    @Produces(MimeTypes.TEXT_PLAIN)
+    public static class ProxyResource {
+        private final ExampleClient upstream;
+
+        public ProxyResource(ExampleClient upstream) {
+            this.upstream = upstream;
+        }
+
+        @GET
+        public String getValue() {
+            return "proxied " + upstream.getValue();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION ANY IMPLIED WARRANTIES OR CONDITIONS
+ * OF TITLE, FITNESS FOR A PARTICULAR PURPOSE, MERCHANTABLITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache Version 2.0 License for specific language governing permissions and limitations under
+ * the License.
+ */
+package com.yammer.dropwizard.testing.integration;
+
+import com.sun.jersey.api.client.ClientResponse;
+import com.yammer.dropwizard.Service;
+import com.yammer.dropwizard.config.Bootstrap;
+import com.yammer.dropwizard.config.Environment;
+import org.eclipse.jetty.http.MimeTypes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TrafficReplayIntegrationTest {
+    private static final String TEST_CONFIG = TrafficReplayIntegrationTest.class.getResource("testConfiguration.yml").getPath();
+    private static final String VALUE_FILE = "value.txt";
+    private java.nio.file.Path recording;
+    private TestServer<ExampleConfiguration, ?> replayServer;
+
+    @Before
+    public void setup() throws Exception {
+        recording = Files.createTempFile("traffic-", ".log");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (replayServer != null && replayServer.isRunning()) {
+            replayServer.stop();
+        }
+        Files.deleteIfExists(recording);
+    }
+
+    @Test
+    public void the_requests_and_responses_are_recorded() throws Exception {
+        record(10, 0);
+
+        final List<RecordedExchange> exchanges = TrafficLog.readAll(recording);
+
+        assertThat(exchanges.size(), is(12));
+        assertThat(exchanges.get(0).getMethod(), is(equalTo("GET")));
+        assertThat(exchanges.get(0).getUri(), is(equalTo("/")));
+        assertThat(exchanges.get(0).getStatus(), is(200));
+        assertThat(new String(exchanges.get(0).getResponseBody(), "UTF-8"), is(equalTo("expectedValue")));
+        assertThat(exchanges.get(11).getUri(), is(equalTo("/missing?page=2")));
+        assertThat(exchanges.get(11).getStatus(), is(404));
+    }
+
+    @Test
+    public void a_record_cut_short_ends_the_log() throws Exception {
+        record(2, 0);
+        // the length prefix of a record whose writer died, followed by the first bytes of the record
+        Files.write(recording, ByteBuffer.allocate(12).putInt(Integer.MAX_VALUE).putLong(42).array(),
+                StandardOpenOption.APPEND);
+
+        assertThat(TrafficLog.readAll(recording).size(), is(4));
+    }
+
+    @Test
+    public void a_recording_replayed_against_the_same_service_matches() throws Exception {
+        record(20, 0);
+        replayServer = startReplayServer(new ExampleService());
+
+        final ReplayResult result = TrafficReplayer.create(recording, replayServer).atMaxConcurrency(4).replay();
+
+        assertThat(result.getMismatches().toString(), result.getMismatchCount(), is(0L));
+        assertThat(result.getReplayed().getRequestCount(), is(22L));
+        assertThat(result.getReplayed().getErrorCount(), is(0L));
+        assertThat(result.getRecorded().getRequestCount(), is(22L));
+    }
+
+    @Test
+    public void changed_responses_are_reported() throws Exception {
+        record(5, 0);
+        replayServer = startReplayServer(new OtherValueService());
+
+        final ReplayResult result = TrafficReplayer.create(recording, replayServer).atMaxConcurrency(2).replay();
+
+        assertThat(result.getMismatchCount(), is(5L));
+        assertThat(result.getMismatches().get(0), is(equalTo("GET /: recorded 200 with 13 bytes, replayed 200 with 10 bytes")));
+    }
+
+    @Test
+    public void the_recorded_timing_is_kept_at_the_given_speed() throws Exception {
+        record(5, 100);
+        replayServer = startReplayServer(new ExampleService());
+
+        final ReplayResult result = TrafficReplayer.create(recording, replayServer).atSpeed(2).replay();
+
+        assertThat(result.getMismatchCount(), is(0L));
+        assertThat(result.getRecorded().getElapsed(TimeUnit.MILLISECONDS) >= 400, is(true));
+        assertThat(result.getReplayed().getElapsed(TimeUnit.MILLISECONDS) >= 180, is(true));
+    }
+
+    @Test
+    public void overlapping_requests_are_replayed_in_the_order_they_started() throws Exception {
+        PausingResource.PAUSING.drainPermits();
+        final TestServer<ExampleConfiguration, PausingService> server = TestServer.create(
+                TrafficReplayIntegrationTest.class, new PausingService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts()
+                .withTrafficRecording(recording);
+        server.start();
+        try {
+            final Thread slow = new Thread() {
+                @Override
+                public void run() {
+                    server.resource("/pause?millis=1000").get(String.class);
+                }
+            };
+            slow.start();
+            assertThat(PausingResource.PAUSING.tryAcquire(10, TimeUnit.SECONDS), is(true));
+            Thread.sleep(300);
+            server.resource("/pause?millis=0").get(String.class); // completes first
+            slow.join();
+        } finally {
+            server.stop();
+        }
+
+        final List<RecordedExchange> exchanges = TrafficLog.readAll(recording);
+        assertThat(exchanges.get(0).getUri(), is(equalTo("/pause?millis=1000")));
+        assertThat(exchanges.get(1).getOffsetNanos() > exchanges.get(0).getOffsetNanos(), is(true));
+
+        final TestServer<ExampleConfiguration, PausingService> replayServer = startReplayServer(new PausingService());
+        this.replayServer = replayServer;
+        final ReplayResult result = TrafficReplayer.create(recording, replayServer).replay();
+
+        assertThat(result.getMismatchCount(), is(0L));
+        // spans from the start of the slow request, not of the first to complete
+        assertThat(result.getRecorded().getElapsed(TimeUnit.MILLISECONDS) >= 1000, is(true));
+        // the slow request is not scheduled before the replay starts, which would add 300 ms to its latency
+        final long slowestMillis = TimeUnit.NANOSECONDS.toMillis(result.getReplayed().getHistogram().getMaxValue());
+        assertThat(Long.toString(slowestMillis), slowestMillis >= 1000 && slowestMillis < 1250, is(true));
+    }
+
+    private void record(int requests, long pauseMillis) throws Exception {
+        final TestServer<ExampleConfiguration, ExampleService> server = TestServer.create(
+                TrafficReplayIntegrationTest.class, new ExampleService(), TEST_CONFIG, VALUE_FILE)
+                .withEphemeralPorts()
+                .withTrafficRecording(recording);
+        server.start();
+        try {
+            for (int i = 0; i < requests; i++) {
+                Thread.sleep(pauseMillis);
+                assertThat(server.resource("/").get(String.class), is(equalTo("expectedValue")));
+            }
+            server.resource("/missing").get(ClientResponse.class).close();
+            server.resource("/missing?page=2").get(ClientResponse.class).close();
+        } finally {
+            server.stop();
+        }
+    }
+
+    private <S extends Service<ExampleConfiguration>> TestServer<ExampleConfiguration, S> startReplayServer(S service)
+            throws Exception {
+        final TestServer<ExampleConfiguration, S> server = TestServer.create(TrafficReplayIntegrationTest.class, service,
+                TEST_CONFIG, VALUE_FILE).withEphemeralPorts();
+        server.start();
+        return server;
+    }
+
+    public static class PausingService extends ExampleService {
+        @Override
+        public void run(ExampleConfiguration configuration, Environment environment) throws Exception {
+            super.run(configuration, environment);
+            environment.addResource(new PausingResource());
+        }
+    }
+
+    @Path("/pause")
+    @Produces(MimeTypes.TEXT_PLAIN)
+    public static class PausingResource {
+        private static final Semaphore PAUSING = new Semaphore(0);
+
+        @GET
+        public String pause(@QueryParam("millis") long millis) throws InterruptedException {
+            if (millis > 0) {
+                PAUSING.release();
+            }
+            Thread.sleep(millis);
+            return "paused";
+        }
+    }
+
+    public static class OtherValueService extends Service<ExampleConfiguration> {
+        @Override
+        public void initialize(Bootstrap<ExampleConfiguration> bootstrap) {
+            bootstrap.setName("other-value-service");
+        }
+
+        @Override
+        public void run(ExampleConfiguration configuration, Environment environment) {
+            environment.addResource(new OtherValueResource());
+        }
+    }
+
+    @Path("/")
+    @Produces(MimeTypes.TEXT_PLAIN)
+    public static class OtherValueResource {
+        @GET
+        public String getValue() {
+            return "otherValue";
+        }
+    }
+}